@@ -90,14 +90,12 @@ import uk.org.ngo.squeezer.service.event.ConnectionChanged;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
 import uk.org.ngo.squeezer.service.event.HomeMenuEvent;
 import uk.org.ngo.squeezer.service.event.MusicChanged;
-import uk.org.ngo.squeezer.service.event.PlayStatusChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
 import uk.org.ngo.squeezer.service.event.PlayersChanged;
-import uk.org.ngo.squeezer.service.event.PowerStatusChanged;
 import uk.org.ngo.squeezer.service.event.RegisterSqueezeNetwork;
-import uk.org.ngo.squeezer.service.event.RepeatStatusChanged;
-import uk.org.ngo.squeezer.service.event.ShuffleStatusChanged;
 import uk.org.ngo.squeezer.service.event.SongTimeChanged;
 import uk.org.ngo.squeezer.util.ImageFetcher;
+import uk.org.ngo.squeezer.util.ImageScheduler;
 import uk.org.ngo.squeezer.widget.CallStatePermissionLauncher;
 import uk.org.ngo.squeezer.widget.OnSwipeListener;
 import uk.org.ngo.squeezer.widget.VolumeController;
@@ -689,7 +687,7 @@ public class NowPlayingFragment extends Fragment implements CallStateDialog.Call
         if (!song.useIcon()) {
             albumArt.setImageDrawable(song.getIconDrawable(mActivity, R.drawable.icon_album));
         } else {
-            ImageFetcher.getInstance(mActivity).loadImage(song.getIcon(), albumArt);
+            ImageFetcher.getInstance(mActivity).loadImage(song.getIcon(), albumArt, ImageScheduler.PRIORITY_NOW_PLAYING, null);
         }
     }
 
@@ -918,7 +916,10 @@ public class NowPlayingFragment extends Fragment implements CallStateDialog.Call
                 ConnectActivity.show(mActivity);
                 break;
             case ConnectionState.CONNECTION_STARTED:
-                showConnectingDialog();
+                // Players restored from the last connection are shown while we connect
+                if (mService == null || mService.getPlayers().isEmpty()) {
+                    showConnectingDialog();
+                }
                 break;
             case ConnectionState.CONNECTION_FAILED:
                 dismissConnectingDialog();
@@ -1001,18 +1002,26 @@ public class NowPlayingFragment extends Fragment implements CallStateDialog.Call
 
     @MainThread
     @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
-    public void onEventMainThread(PlayStatusChanged event) {
-        if (event.player.equals(requireService().getActivePlayer())) {
-            updatePlayPauseIcon(event.playStatus);
+    public void onEventMainThread(PlayerStateChanged event) {
+        if (!event.player.equals(requireService().getActivePlayer())) {
+            return;
         }
-    }
-
-    @MainThread
-    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
-    public void onEventMainThread(PowerStatusChanged event) {
-        if (event.player.equals(requireService().getActivePlayer())) {
+        PlayerState playerState = event.playerState;
+        if (event.changed(PlayerStateChanged.PLAY_STATUS)) {
+            updatePlayPauseIcon(playerState.getPlayStatus());
+        }
+        if (event.changed(PlayerStateChanged.POWER)) {
             updatePlayerMenuItems();
         }
+        if (event.changed(PlayerStateChanged.REPEAT)) {
+            updateRepeatStatus(playerState.getRepeatStatus());
+        }
+        if (event.changed(PlayerStateChanged.SHUFFLE)) {
+            updateShuffleStatus(playerState.getShuffleStatus());
+        }
+        if (event.changed(PlayerStateChanged.SONG_TIME | PlayerStateChanged.PLAY_STATUS)) {
+            updateTimeDisplayTo(playerState.getTrackElapsed(), playerState.getCurrentSongDuration());
+        }
     }
 
     @MainThread
@@ -1034,22 +1043,6 @@ public class NowPlayingFragment extends Fragment implements CallStateDialog.Call
         }
     }
 
-    @MainThread
-    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
-    public void onEventMainThread(RepeatStatusChanged event) {
-        if (event.player.equals(requireService().getActivePlayer())) {
-            updateRepeatStatus(event.repeatStatus);
-        }
-    }
-
-    @MainThread
-    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
-    public void onEventMainThread(ShuffleStatusChanged event) {
-        if (event.player.equals(requireService().getActivePlayer())) {
-            updateShuffleStatus(event.shuffleStatus);
-        }
-    }
-
     @MainThread
     @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
     public void onEventMainThread(SongTimeChanged event) {
@@ -162,6 +162,9 @@ public final class Preferences {
     // Download confirmation
     static final String KEY_CLEAR_PLAYLIST_CONFIRMATION = "squeezer.clear.current_playlist.confirmation";
 
+    // Number of list items to keep in memory (0 = no limit)
+    static final String KEY_LIST_CACHE_SIZE = "squeezer.list_cache_size";
+
     // Download enabled
     static final String KEY_DOWNLOAD_ENABLED = "squeezer.download.enabled";
 
@@ -516,6 +519,10 @@ public final class Preferences {
         sharedPreferences.edit().putBoolean(Preferences.KEY_CLEAR_PLAYLIST_CONFIRMATION, b).apply();
     }
 
+    public int getListCacheSize() {
+        return sharedPreferences.getInt(KEY_LIST_CACHE_SIZE, context.getResources().getInteger(R.integer.ListCacheSize));
+    }
+
     public IncomingCallAction getActionOnIncomingCall() {
         String string = sharedPreferences.getString(KEY_ACTION_ON_INCOMING_CALL, null);
         if (string == null) {
@@ -47,6 +47,7 @@ public class SettingsFragment  extends PreferenceFragmentCompat implements
     private ISqueezeService service = null;
 
     private IntEditTextPreference fadeInPref;
+    private IntEditTextPreference listCacheSizePref;
 
     private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
@@ -196,6 +197,11 @@ public class SettingsFragment  extends PreferenceFragmentCompat implements
 
         ListPreference customizeShortcutsPref = findPreference(Preferences.KEY_CUSTOMIZE_SHORTCUT_MODE);
         fillEnumPreference(customizeShortcutsPref, Preferences.CustomizeShortcutsMode.class, preferences.getCustomizeShortcutsMode());
+
+        listCacheSizePref = findPreference(Preferences.KEY_LIST_CACHE_SIZE);
+        listCacheSizePref.setOnPreferenceChangeListener(this);
+        listCacheSizePref.setText(String.valueOf(preferences.getListCacheSize()));
+        updateListCacheSizeSummary(preferences.getListCacheSize());
     }
 
     private <E extends Enum<E> & EnumWithText> void fillEnumPreference(ListPreference listPreference, Class<E> actionTypes, E defaultValue) {
@@ -234,6 +240,14 @@ public class SettingsFragment  extends PreferenceFragmentCompat implements
         }
     }
 
+    private void updateListCacheSizeSummary(int listCacheSize) {
+        if (listCacheSize == 0) {
+            listCacheSizePref.setSummary(R.string.settings_list_cache_size_unlimited);
+        } else {
+            listCacheSizePref.setSummary(getString(R.string.settings_list_cache_size_items, listCacheSize));
+        }
+    }
+
     /**
      * A preference has been changed by the user, but has not yet been persisted.
      */
@@ -246,6 +260,10 @@ public class SettingsFragment  extends PreferenceFragmentCompat implements
             updateFadeInSecondsSummary(Util.getInt(newValue.toString()));
         }
 
+        if (Preferences.KEY_LIST_CACHE_SIZE.equals(key)) {
+            updateListCacheSizeSummary(Util.getInt(newValue.toString()));
+        }
+
         // If the user has enabled Scrobbling but we don't think it will work
         // pop up a dialog with links to Google Play for apps to install.
         if (Preferences.KEY_SCROBBLE_ENABLED.equals(key)) {
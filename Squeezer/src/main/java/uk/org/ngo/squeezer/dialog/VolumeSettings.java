@@ -42,7 +42,7 @@ public class VolumeSettings extends DialogFragment {
         groupVolume.setOnCheckedChangeListener((buttonView, isChecked) -> groupVolume.setText(isChecked ? R.string.player_group_volume_on : R.string.player_group_volume_off));
         groupVolume.setChecked(preferences.isGroupVolume());
 
-        String digitalVolumeControl = service.getActivePlayerState().prefs.get(Player.Pref.DIGITAL_VOLUME_CONTROL);
+        String digitalVolumeControl = service.getActivePlayerState().getPrefs().get(Player.Pref.DIGITAL_VOLUME_CONTROL);
         boolean canFixedVolume = digitalVolumeControl != null; // TODO check for hasDigitalOut
         SwitchMaterial fixedVolume = view.findViewById(R.id.fixed_volume);
         view.findViewById(R.id.fixed_volume_label).setVisibility(canFixedVolume ? View.VISIBLE : View.GONE);
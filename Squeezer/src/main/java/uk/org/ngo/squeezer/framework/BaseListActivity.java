@@ -151,6 +151,11 @@ public abstract class BaseListActivity<VH extends ItemViewHolder<T>, T extends I
         getItemAdapter().clear();
     }
 
+    @Override
+    protected void retainItemAdapter(int firstPosition, int lastPosition) {
+        getItemAdapter().retainItems(firstPosition, lastPosition);
+    }
+
     protected abstract ItemAdapter<VH, T> createItemListAdapter();
 
     @Override
@@ -164,6 +169,11 @@ public abstract class BaseListActivity<VH extends ItemViewHolder<T>, T extends I
         super.onItemsReceived(count, start, items, dataType);
     }
 
+    @Override
+    public boolean canReceiveChunks() {
+        return true;
+    }
+
     @Override
     public Object getClient() {
         return this;
@@ -26,9 +26,11 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.List;
 
 import uk.org.ngo.squeezer.R;
+import uk.org.ngo.squeezer.Squeezer;
 import uk.org.ngo.squeezer.model.Item;
 import uk.org.ngo.squeezer.util.Reflection;
 
@@ -71,6 +73,19 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
      */
     private final int pageSize;
 
+    /**
+     * Maximum number of pages kept in {@link #pages}, or 0 to keep all pages.
+     * <p>
+     * When exceeded the pages farthest from the most recently displayed position are dropped, and
+     * the {@link PageOrderer} is told so it can order them again when they are needed.
+     */
+    private final int maxPages;
+
+    /**
+     * Page of the most recently displayed position
+     */
+    private int currentPage;
+
     /**
      * Creates a new adapter. Initially the item list is populated with items displaying the
      * localized "loading" text. Call {@link #update(int, int, List)} as items arrives from
@@ -84,6 +99,9 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
         this.orderer = orderer;
         mEmptyItem = emptyItem;
         pageSize = getActivity().getResources().getInteger(R.integer.PageSize);
+        int listCacheSize = Squeezer.getPreferences().getListCacheSize();
+        // Keep at least the current page, and the pages on each side of it
+        maxPages = (listCacheSize > 0 ? Math.max(3, (listCacheSize + pageSize - 1) / pageSize) : 0);
         pages.clear();
     }
 
@@ -111,6 +129,7 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
     public void clear() {
         count = (mEmptyItem ? 1 : 0);
         pages.clear();
+        currentPage = 0;
         notifyDataSetChanged();
     }
 
@@ -170,9 +189,50 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
             }
             page[offset++] = item;
         }
+        trimPages();
+    }
+
+    /**
+     * Drop the pages farthest from the current page until no more than {@link #maxPages} are kept.
+     */
+    private void trimPages() {
+        if (maxPages == 0) {
+            return;
+        }
+        while (pages.size() > maxPages) {
+            int index = 0;
+            int distance = -1;
+            for (int i = 0; i < pages.size(); i++) {
+                int d = Math.abs(pages.keyAt(i) - currentPage);
+                if (d > distance) {
+                    distance = d;
+                    index = i;
+                }
+            }
+            int pageNumber = pages.keyAt(index);
+            pages.removeAt(index);
+            onPageEvicted(pageNumber);
+        }
+    }
+
+    /**
+     * Tell the orderer that the server pages overlapping the supplied page are no longer held.
+     */
+    private void onPageEvicted(int pageNumber) {
+        int offset = (mEmptyItem ? 1 : 0);
+        int first = Math.max(0, pageNumber * pageSize - offset);
+        int last = (pageNumber + 1) * pageSize - 1 - offset;
+        orderer.onPageEvicted(pageNumber(first) * pageSize);
+        if (pageNumber(last) != pageNumber(first)) {
+            orderer.onPageEvicted(pageNumber(last) * pageSize);
+        }
     }
 
     public T getItem(int position) {
+        if (pageNumber(position) != currentPage) {
+            currentPage = pageNumber(position);
+            trimPages();
+        }
         T item = getPage(position)[position % pageSize];
         if (item == null) {
             if (mEmptyItem) {
@@ -220,6 +280,108 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
         }
     }
 
+    /**
+     * Update the contents of the items in this list after the list has changed on the server,
+     * while the items held so far are still displayed.
+     * <p>
+     * Only the positions whose item differs from the item held before (see
+     * {@link #isSameContent(Item, Item)}), and the positions added or removed at the end of the
+     * list, are notified, so unchanged rows are not bound again.
+     *
+     * @param count Number of items as reported by SqueezeServer.
+     * @param start The start position of items in this update.
+     * @param items New items to replace the items held at their positions
+     * @see #retainItems(int, int)
+     */
+    public void reconcile(int count, int start, List<T> items) {
+        int offset = (mEmptyItem ? 1 : 0);
+        count += offset;
+        start += offset;
+        int oldCount = this.count;
+
+        if (count != oldCount) {
+            if (count < oldCount) {
+                truncate(count);
+            } else if (oldCount % pageSize != 0) {
+                // The new positions at the end of the last page must be ordered when displayed
+                onPageEvicted(pageNumber(oldCount));
+            }
+            this.count = count;
+            onCountUpdated();
+            if (count > oldCount) {
+                notifyItemRangeInserted(oldCount, count - oldCount);
+            } else {
+                notifyItemRangeRemoved(count, oldCount - count);
+            }
+        }
+
+        int changedStart = -1;
+        int position = start;
+        for (T item : items) {
+            if (position >= count) {
+                break;
+            }
+            T[] page = getPage(position);
+            T oldItem = page[position % pageSize];
+            page[position % pageSize] = item;
+
+            // Positions past the old count have been notified as inserted
+            boolean changed = position < oldCount && (oldItem == null || !isSameContent(oldItem, item));
+            if (changed && changedStart < 0) {
+                changedStart = position;
+            } else if (!changed && changedStart >= 0) {
+                notifyItemRangeChanged(changedStart, position - changedStart);
+                changedStart = -1;
+            }
+            position++;
+        }
+        if (changedStart >= 0) {
+            notifyItemRangeChanged(changedStart, position - changedStart);
+        }
+        trimPages();
+    }
+
+    /**
+     * Drop the pages which don't overlap the supplied range of positions, typically the displayed
+     * rows, before the list is fetched again with {@link #reconcile(int, int, List)}. The items of
+     * the remaining pages are displayed until their replacements arrive.
+     * <p>
+     * The {@link PageOrderer} is not told, as it is expected to forget all pages it has received.
+     */
+    public void retainItems(int firstPosition, int lastPosition) {
+        int firstPage = pageNumber(firstPosition);
+        int lastPage = pageNumber(lastPosition);
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            int pageNumber = pages.keyAt(i);
+            if (pageNumber < firstPage || pageNumber > lastPage) {
+                pages.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Whether a newly received item shows the same as the item it replaces, so its row need not
+     * be bound again. The default implementation compares the items with {@link Item#equals(Object)}.
+     */
+    protected boolean isSameContent(@NonNull T oldItem, @NonNull T newItem) {
+        return oldItem.equals(newItem);
+    }
+
+    /**
+     * Forget the items from the supplied position on, dropping the pages which are left empty.
+     */
+    private void truncate(int count) {
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            int pageNumber = pages.keyAt(i);
+            if (pageNumber * pageSize >= count) {
+                pages.removeAt(i);
+                onPageEvicted(pageNumber);
+            } else if ((pageNumber + 1) * pageSize > count) {
+                Arrays.fill(pages.valueAt(i), count % pageSize, pageSize, null);
+            }
+        }
+    }
+
     /**
      * Move the item at the specified position to the new position and notify the change.
      */
@@ -250,39 +412,69 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
         notifyItemInserted(position);
     }
 
+    /**
+     * Shift the items after the supplied position one position down. Only the pages held are
+     * shifted; a page whose last item would come from a page which is not held, or is not received
+     * yet, gets an empty position, and the orderer is told so it can order the page again.
+     */
     private void remove(int position) {
-        T[] page = getPage(position);
-        int offset = position % pageSize;
-        while (position++ <= count) {
-            if (offset == pageSize - 1) {
-                T[] nextPage = getPage(position);
-                page[offset] = nextPage[0];
-                offset = 0;
-                page = nextPage;
-            } else {
-                page[offset] = page[offset+1];
-                offset++;
+        // The keys of a SparseArray are in ascending order, so the first item of the next page is
+        // read before that page is shifted
+        for (int i = 0; i < pages.size(); i++) {
+            int pageNumber = pages.keyAt(i);
+            int first = pageNumber * pageSize;
+            int last = first + pageSize - 1;
+            if (last < position) {
+                continue;
+            }
+            T[] page = pages.valueAt(i);
+            int offset = Math.max(position - first, 0);
+            System.arraycopy(page, offset + 1, page, offset, pageSize - 1 - offset);
+            T[] nextPage = pages.get(pageNumber + 1);
+            page[pageSize - 1] = (nextPage != null ? nextPage[0] : null);
+            if (page[pageSize - 1] == null && last + 1 < count) {
+                onPageEvicted(pageNumber);
             }
         }
-
+        trimPages();
     }
 
+    /**
+     * Shift the items from the supplied position one position up, and put the item at the
+     * position. Only the pages held are shifted; a page whose first item would come from a page
+     * which is not held, or is not received yet, gets an empty position, and the orderer is told so
+     * it can order the page again. If the page of the position is not held, the item is not kept.
+     */
     private void insert(int position, T item) {
-        int n = count;
-        T[] page = getPage(n);
-        int offset = n % pageSize;
-        while (n-- > position) {
-            if (offset == 0) {
-                T[] nextPage = getPage(n);
-                offset = pageSize - 1;
-                page[0] = nextPage[offset];
-                page = nextPage;
+        if (count % pageSize == 0 && (position == count || pages.get(pageNumber(count - 1)) != null)) {
+            // The last item starts a new page, which holds no other items
+            getPage(count);
+        }
+        // Walk the pages down, so the last item of the previous page is read before that page is
+        // shifted
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            int pageNumber = pages.keyAt(i);
+            int first = pageNumber * pageSize;
+            if (first > count) {
+                continue;
+            }
+            if (first + pageSize - 1 < position) {
+                break;
+            }
+            T[] page = pages.valueAt(i);
+            int offset = Math.max(position - first, 0);
+            System.arraycopy(page, offset, page, offset + 1, pageSize - 1 - offset);
+            if (position >= first) {
+                page[offset] = item;
             } else {
-                page[offset] = page[offset-1];
-                offset--;
+                T[] previousPage = pages.get(pageNumber - 1);
+                page[0] = (previousPage != null ? previousPage[pageSize - 1] : null);
+                if (page[0] == null) {
+                    onPageEvicted(pageNumber);
+                }
             }
         }
-        page[offset] = item;
+        trimPages();
     }
 
     private T[] arrayInstance(int size) {
@@ -330,6 +522,13 @@ public abstract class ItemAdapter<VH extends ItemViewHolder<T>, T extends Item>
 
     public interface PageOrderer {
         void maybeOrderPage(int pagePosition);
+
+        /**
+         * The page starting at the supplied position has been dropped from the adapter, so it must
+         * be ordered again the next time it is displayed.
+         */
+        default void onPageEvicted(int pagePosition) {
+        }
     }
 
 }
@@ -18,6 +18,7 @@ package uk.org.ngo.squeezer.framework;
 
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
@@ -32,6 +33,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -86,6 +88,11 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
      */
     private final Stack<Integer> mOrderedPagesBeforeHandshake = new Stack<>();
 
+    /**
+     * Orders pages ahead of the visible rows while the list is scrolled.
+     */
+    private PagePrefetcher mPrefetcher;
+
     /**
      * Progress bar (spinning) while items are loading.
      */
@@ -156,6 +163,7 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
         super.onCreate(savedInstanceState);
 
         mPageSize = getResources().getInteger(R.integer.PageSize);
+        mPrefetcher = new PagePrefetcher(mPageSize, getResources().getInteger(R.integer.PrefetchPages));
 
         mRetainFragment = RetainFragment.getInstance(TAG, getSupportFragmentManager());
         setContentView(getContentView());
@@ -237,6 +245,15 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
      */
     protected abstract void clearItemAdapter();
 
+    /**
+     * Call back from {@link #refreshItems()}, which must drop the items outside the supplied range
+     * of positions from any adapters holding items. The default implementation clears the
+     * adapters.
+     */
+    protected void retainItemAdapter(int firstPosition, int lastPosition) {
+        clearItemAdapter();
+    }
+
     /**
      * Call back from {@link #onItemsReceived(int, int, List, Class)}
      */
@@ -249,7 +266,17 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
      * @param pagePosition position in the list to start the fetch.
      */
     public void maybeOrderPage(int pagePosition) {
-        if (!mListScrolling && !mReceivedPages.contains(pagePosition) && !mOrderedPages
+        if (!mListScrolling) {
+            orderPageIfNeeded(pagePosition);
+        }
+    }
+
+    /**
+     * Orders a page worth of data, starting at the specified position, if it has not already been
+     * ordered, even while the list is scrolling.
+     */
+    private void orderPageIfNeeded(int pagePosition) {
+        if (!mReceivedPages.contains(pagePosition) && !mOrderedPages
                 .contains(pagePosition) && !mOrderedPagesBeforeHandshake.contains(pagePosition)) {
             ISqueezeService service = getService();
 
@@ -261,6 +288,7 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
                 try {
                     orderPage(service, pagePosition);
                     mOrderedPages.add(pagePosition);
+                    mPrefetcher.onPageOrdered(pagePosition, SystemClock.uptimeMillis());
                 } catch (SqueezeService.HandshakeNotCompleteException e) {
                     mOrderedPagesBeforeHandshake.push(pagePosition);
                 }
@@ -268,6 +296,11 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
         }
     }
 
+    @Override
+    public void onPageEvicted(int pagePosition) {
+        mReceivedPages.remove(pagePosition);
+    }
+
     /**
      * Update the UI with the player change
      */
@@ -332,6 +365,41 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
         }
     }
 
+    /**
+     * Orders pages ahead of the visible rows in the direction of the scroll, and cancels orders
+     * for pages the user has scrolled past.
+     * <p>
+     * How far ahead to order depends on the scroll velocity and on how long it takes the server
+     * to deliver a page.
+     *
+     * @param listView The listview being scrolled.
+     */
+    private void prefetchPages(RecyclerView listView) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) listView.getLayoutManager();
+        int firstVisibleItemPosition = layoutManager.findFirstVisibleItemPosition();
+        if (firstVisibleItemPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int lastVisibleItemPosition = firstVisibleItemPosition + listView.getChildCount() - 1;
+        mPrefetcher.onScrolled(firstVisibleItemPosition, SystemClock.uptimeMillis());
+
+        ISqueezeService service = getService();
+        for (Integer pagePosition : new ArrayList<>(mOrderedPages)) {
+            if (mPrefetcher.isPassed(pagePosition, firstVisibleItemPosition, lastVisibleItemPosition)) {
+                mOrderedPages.remove(pagePosition);
+                mPrefetcher.onPageCancelled(pagePosition);
+                if (service != null) {
+                    service.cancelItemListRequest(this, pagePosition);
+                }
+            }
+        }
+
+        for (int pagePosition : mPrefetcher.getPagesToPrefetch(firstVisibleItemPosition,
+                lastVisibleItemPosition, listView.getAdapter().getItemCount())) {
+            orderPageIfNeeded(pagePosition);
+        }
+    }
+
     /**
      * Tracks items that have been received from the server.
      * <p>
@@ -358,6 +426,7 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
                 int pageStart = (start / mPageSize) * mPageSize;
                 mReceivedPages.add(pageStart);
                 mOrderedPages.remove(pageStart);
+                mPrefetcher.onPageReceived(pageStart, SystemClock.uptimeMillis());
             }
         }
 
@@ -378,11 +447,34 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
         }
     }
 
+    /**
+     * Orders the pages of the visible rows again, after the list has changed on the server. Unlike
+     * {@link #clearAndReOrderItems()} the visible rows are kept on display until the new items
+     * arrive, and other pages are only ordered again when they are displayed.
+     */
+    public void refreshItems() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) listView.getLayoutManager();
+        int firstVisibleItemPosition = layoutManager.findFirstVisibleItemPosition();
+        if (firstVisibleItemPosition == RecyclerView.NO_POSITION) {
+            clearAndReOrderItems();
+            return;
+        }
+        int lastVisibleItemPosition = firstVisibleItemPosition + listView.getChildCount() - 1;
+
+        mOrderedPagesBeforeHandshake.clear();
+        mOrderedPages.clear();
+        mReceivedPages.clear();
+        mPrefetcher.reset();
+        retainItemAdapter(firstVisibleItemPosition, lastVisibleItemPosition);
+        maybeOrderVisiblePages(listView);
+    }
+
     /** Empty the variables that track which pages have been requested. */
     public void clearItems() {
         mOrderedPagesBeforeHandshake.clear();
         mOrderedPages.clear();
         mReceivedPages.clear();
+        mPrefetcher.reset();
         clearItemAdapter();
     }
 
@@ -396,7 +488,8 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
     /**
      * Tracks scrolling activity.
      * <p>
-     * When the list is idle, new pages of data are fetched from the server.
+     * When the list is idle, new pages of data are fetched from the server. While the list is
+     * scrolling, pages ahead of the visible rows are prefetched.
      */
     protected class ScrollListener extends RecyclerView.OnScrollListener {
 
@@ -411,6 +504,7 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
             switch (scrollState) {
                 case RecyclerView.SCROLL_STATE_IDLE:
                     mListScrolling = false;
+                    mPrefetcher.onScrollStopped();
                     maybeOrderVisiblePages(listView);
                     break;
 
@@ -422,5 +516,12 @@ public abstract class ItemListActivity extends BaseActivity implements ItemAdapt
 
             mPrevScrollState = scrollState;
         }
+
+        @Override
+        public void onScrolled(@NonNull RecyclerView listView, int dx, int dy) {
+            if (mListScrolling) {
+                prefetchPages(listView);
+            }
+        }
     }
 }
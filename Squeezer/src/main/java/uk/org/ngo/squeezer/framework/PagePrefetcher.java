@@ -0,0 +1,158 @@
+package uk.org.ngo.squeezer.framework;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides which pages to order ahead of the visible rows while a list is scrolled.
+ * <p>
+ * The scroll velocity is estimated from the first visible position as the list scrolls, and the
+ * time it takes the server to deliver a page is measured from the orders. The look-ahead is the
+ * number of rows the list will scroll past while a page is fetched, so a slow server or a fast
+ * fling orders more pages ahead, and a slow scroll orders only the next page.
+ * <p>
+ * Times are supplied by the caller, so this class has no dependency on the Android clock.
+ */
+class PagePrefetcher {
+    /** Assumed time to fetch a page, until a page has been received */
+    private static final long INITIAL_FETCH_TIME = 500;
+
+    /** Velocity samples further apart than this are not used to estimate the velocity */
+    private static final long MAX_SAMPLE_INTERVAL = 250;
+
+    private final int mPageSize;
+    private final int mMaxPages;
+
+    /** Time pages were ordered, by page position */
+    private final Map<Integer, Long> mOrderTimes = new HashMap<>();
+
+    /** Smoothed time in milliseconds from a page is ordered until it is received */
+    private long mFetchTime = INITIAL_FETCH_TIME;
+
+    /** Smoothed scroll velocity in rows per millisecond. Negative when scrolling up. */
+    private float mVelocity;
+
+    private int mLastPosition = -1;
+    private long mLastTime;
+
+    /**
+     * @param pageSize Number of items in a page
+     * @param maxPages Maximum number of pages to order ahead of the visible rows
+     */
+    PagePrefetcher(int pageSize, int maxPages) {
+        mPageSize = pageSize;
+        mMaxPages = Math.max(1, maxPages);
+    }
+
+    synchronized void onPageOrdered(int pagePosition, long now) {
+        mOrderTimes.put(pagePosition, now);
+    }
+
+    synchronized void onPageReceived(int pagePosition, long now) {
+        Long orderTime = mOrderTimes.remove(pagePosition);
+        if (orderTime != null) {
+            mFetchTime = (3 * mFetchTime + (now - orderTime)) / 4;
+        }
+    }
+
+    /** An order was given up, so it must not be used to measure the fetch time. */
+    synchronized void onPageCancelled(int pagePosition) {
+        mOrderTimes.remove(pagePosition);
+    }
+
+    /**
+     * Register the first visible position of the list.
+     */
+    synchronized void onScrolled(int firstVisiblePosition, long now) {
+        if (mLastPosition >= 0 && now > mLastTime) {
+            long interval = now - mLastTime;
+            if (interval <= MAX_SAMPLE_INTERVAL) {
+                float velocity = (float) (firstVisiblePosition - mLastPosition) / interval;
+                mVelocity = (mVelocity + velocity) / 2;
+            } else {
+                mVelocity = 0;
+            }
+        }
+        mLastPosition = firstVisiblePosition;
+        mLastTime = now;
+    }
+
+    /** The list has stopped scrolling. */
+    synchronized void onScrollStopped() {
+        mVelocity = 0;
+        mLastPosition = -1;
+    }
+
+    /**
+     * @return The direction of the scroll, 1 for down, -1 for up and 0 if the list is not moving.
+     */
+    synchronized int getDirection() {
+        return (int) Math.signum(mVelocity);
+    }
+
+    /**
+     * @return Number of pages to order ahead of the visible rows, in the direction of the scroll.
+     */
+    synchronized int getLookAheadPages() {
+        if (mVelocity == 0) {
+            return 0;
+        }
+        float rows = Math.abs(mVelocity) * mFetchTime;
+        return Math.min(mMaxPages, Math.max(1, (int) Math.ceil(rows / mPageSize)));
+    }
+
+    /**
+     * Compute the positions of the pages to order for the supplied visible rows.
+     *
+     * @param firstVisiblePosition First visible row
+     * @param lastVisiblePosition Last visible row
+     * @param count Number of items in the list
+     * @return Page positions, nearest first
+     */
+    synchronized int[] getPagesToPrefetch(int firstVisiblePosition, int lastVisiblePosition, int count) {
+        int lookAhead = getLookAheadPages();
+        int[] pages = new int[lookAhead];
+        int n = 0;
+        int direction = getDirection();
+        int edge = (direction > 0 ? lastVisiblePosition : firstVisiblePosition);
+        int page = (edge / mPageSize) * mPageSize;
+        for (int i = 0; i < lookAhead; i++) {
+            page += direction * mPageSize;
+            if (page < 0 || page >= count) {
+                break;
+            }
+            pages[n++] = page;
+        }
+        if (n < pages.length) {
+            int[] result = new int[n];
+            System.arraycopy(pages, 0, result, 0, n);
+            return result;
+        }
+        return pages;
+    }
+
+    /**
+     * @return true if the user has scrolled so far past the supplied page that it is no longer
+     * worth fetching.
+     */
+    synchronized boolean isPassed(int pagePosition, int firstVisiblePosition, int lastVisiblePosition) {
+        int direction = getDirection();
+        if (direction > 0) {
+            return pagePosition + 2 * mPageSize <= firstVisiblePosition;
+        }
+        if (direction < 0) {
+            return pagePosition - mPageSize > lastVisiblePosition;
+        }
+        return false;
+    }
+
+    synchronized long getFetchTime() {
+        return mFetchTime;
+    }
+
+    /** Forget all outstanding orders, e.g. because the list was cleared. */
+    synchronized void reset() {
+        mOrderTimes.clear();
+        onScrollStopped();
+    }
+}
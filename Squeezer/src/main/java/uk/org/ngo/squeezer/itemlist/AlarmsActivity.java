@@ -197,7 +197,7 @@ public class AlarmsActivity extends BaseListActivity<AlarmView, Alarm> implement
     }
 
     private void bindPreferences() {
-        Map<Player.Pref, String> prefs = mActivePlayer.getPlayerState().prefs;
+        Map<Player.Pref, String> prefs = mActivePlayer.getPlayerState().getPrefs();
         boolean alarmsEnabled = "1".equals(prefs.get(Player.Pref.ALARMS_ENABLED));
         mAlarmsEnabledButton.setChecked(alarmsEnabled);
         mAllAlarmsHintView.setText(alarmsEnabled ? R.string.all_alarms_on_hint : R.string.all_alarms_off_hint);
@@ -218,7 +218,7 @@ public class AlarmsActivity extends BaseListActivity<AlarmView, Alarm> implement
     @Override
     @NonNull
     public String getPlayerPref(@NonNull Player.Pref playerPref, @NonNull String def) {
-        String ret = mActivePlayer.getPlayerState().prefs.get(playerPref);
+        String ret = mActivePlayer.getPlayerState().getPrefs().get(playerPref);
         return (ret == null) ? def : ret;
     }
 
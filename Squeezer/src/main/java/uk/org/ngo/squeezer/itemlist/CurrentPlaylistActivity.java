@@ -37,6 +37,7 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.Map;
+import java.util.Objects;
 
 import uk.org.ngo.squeezer.Preferences;
 import uk.org.ngo.squeezer.R;
@@ -45,6 +46,7 @@ import uk.org.ngo.squeezer.framework.ItemAdapter;
 import uk.org.ngo.squeezer.framework.ItemViewHolder;
 import uk.org.ngo.squeezer.itemlist.dialog.PlaylistClearDialog;
 import uk.org.ngo.squeezer.itemlist.dialog.PlaylistSaveDialog;
+import uk.org.ngo.squeezer.model.Item;
 import uk.org.ngo.squeezer.model.JiveItem;
 import uk.org.ngo.squeezer.service.ISqueezeService;
 import uk.org.ngo.squeezer.service.event.MusicChanged;
@@ -54,9 +56,14 @@ import uk.org.ngo.squeezer.widget.UndoBarController;
 
 /**
  * Activity that shows the songs in the current playlist.
+ * <p>
+ * Edits made here are shown at once. When the playlist changes on the server, for our own edits
+ * or anyone else's, only the visible rows are fetched again, and only the rows which differ are
+ * updated.
  */
 public class CurrentPlaylistActivity extends JiveItemListActivity implements PlaylistClearDialog.PlaylistClearDialogListener {
-    private int skipPlaylistChanged = 0;
+    /** Number of our own edits which the server has not yet reported as playlist changes */
+    private int pendingEdits = 0;
 
     /**
      * Called when the activity is first created.
@@ -124,9 +131,22 @@ public class CurrentPlaylistActivity extends JiveItemListActivity implements Pla
             protected int getItemViewType(JiveItem item) {
                 return (item != null) ? R.layout.list_item : R.layout.list_item_pending;
             }
+
+            @Override
+            protected boolean isSameContent(@NonNull JiveItem oldItem, @NonNull JiveItem newItem) {
+                return oldItem.getName().equals(newItem.getName())
+                        && Objects.equals(oldItem.text2, newItem.text2)
+                        && oldItem.getIcon().equals(newItem.getIcon());
+            }
         };
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <IT extends Item> void updateAdapter(int count, int start, List<IT> items, Class<IT> dataType) {
+        getItemAdapter().reconcile(count, start, (List<JiveItem>) items);
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.currentplaylistmenu, menu);
@@ -212,18 +232,22 @@ public class CurrentPlaylistActivity extends JiveItemListActivity implements Pla
         if (getService() == null) {
             return;
         }
-        if (skipPlaylistChanged > 0) {
-            skipPlaylistChanged--;
-            return;
-        }
         if (event.player.equals(getService().getActivePlayer())) {
-            clearAndReOrderItems();
-            getItemAdapter().notifyDataSetChanged();
+            // Our edits are already shown, so wait until the server has done them all, and then
+            // pick up any other changes made in the meantime.
+            if (pendingEdits > 0 && --pendingEdits > 0) {
+                return;
+            }
+            refreshItems();
         }
     }
 
-    public void skipPlaylistChanged() {
-        skipPlaylistChanged++;
+    /**
+     * Called when an edit which is already shown has been sent to the server, so the list is not
+     * fetched again until the server has done it.
+     */
+    public void onPlaylistEdited() {
+        pendingEdits++;
     }
 
     @Override
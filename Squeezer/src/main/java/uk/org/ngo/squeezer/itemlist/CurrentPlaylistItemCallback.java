@@ -37,7 +37,6 @@ public class CurrentPlaylistItemCallback extends ItemTouchHelper.SimpleCallback
             activity.setSelectedIndex(selectedIndex + 1);
         }
 
-        // TODO remember moves so we can do them when items arrives
         activity.getItemAdapter().moveItem(viewHolder.getAbsoluteAdapterPosition(), position);
         viewPosition = position;
 
@@ -59,7 +58,7 @@ public class CurrentPlaylistItemCallback extends ItemTouchHelper.SimpleCallback
                 ISqueezeService service = activity.getService();
                 if (viewPosition != itemPosition && service != null) {
                     service.playlistMove(itemPosition, viewPosition);
-                    activity.skipPlaylistChanged();
+                    activity.onPlaylistEdited();
                 }
                 itemPosition = viewPosition = -1;
                 break;
@@ -84,7 +83,7 @@ public class CurrentPlaylistItemCallback extends ItemTouchHelper.SimpleCallback
                 ISqueezeService service = activity.getService();
                 if (service != null) {
                     service.playlistRemove(position);
-                    activity.skipPlaylistChanged();
+                    activity.onPlaylistEdited();
                 }
             }
         });
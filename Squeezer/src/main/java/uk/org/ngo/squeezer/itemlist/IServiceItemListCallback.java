@@ -22,5 +22,13 @@ import uk.org.ngo.squeezer.service.ServiceCallback;
 
 public interface IServiceItemListCallback<T> extends ServiceCallback {
     void onItemsReceived(int count, int start, Map<String, Object> parameters, List<T> items, Class<T> dataType);
+
+    /**
+     * @return true if the items of a page may be delivered in several calls to
+     * {@link #onItemsReceived(int, int, Map, List, Class)}, so the first items can be shown sooner.
+     */
+    default boolean canReceiveChunks() {
+        return false;
+    }
 }
 
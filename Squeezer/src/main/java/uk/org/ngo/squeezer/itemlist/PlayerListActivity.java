@@ -88,9 +88,13 @@ public class PlayerListActivity extends ItemListActivity implements
 
     @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
     public void onEventMainThread(PlayerVolume event) {
-        if (mTrackingTouch != event.player) {
-            adapter.notifyItemChanged(event.player);
-            adapter.notifyGroupChanged(event.player);
+        onVolumeChanged(event.player);
+    }
+
+    private void onVolumeChanged(Player player) {
+        if (mTrackingTouch != player) {
+            adapter.notifyItemChanged(player);
+            adapter.notifyGroupChanged(player);
         }
     }
 
@@ -156,7 +160,7 @@ public class PlayerListActivity extends ItemListActivity implements
 
     @Override
     public String getPlayTrackAlbum() {
-        return currentPlayer.getPlayerState().prefs.get(Player.Pref.PLAY_TRACK_ALBUM);
+        return currentPlayer.getPlayerState().getPrefs().get(Player.Pref.PLAY_TRACK_ALBUM);
     }
 
     @Override
@@ -166,7 +170,7 @@ public class PlayerListActivity extends ItemListActivity implements
 
     @Override
     public String getDefeatDestructiveTTP() {
-        return currentPlayer.getPlayerState().prefs.get(Player.Pref.DEFEAT_DESTRUCTIVE_TTP);
+        return currentPlayer.getPlayerState().getPrefs().get(Player.Pref.DEFEAT_DESTRUCTIVE_TTP);
     }
 
     @Override
@@ -176,7 +180,7 @@ public class PlayerListActivity extends ItemListActivity implements
 
     @Override
     public String getSyncVolume() {
-        return currentSyncGroup.getItem(0).getPlayerState().prefs.get(Player.Pref.SYNC_VOLUME);
+        return currentSyncGroup.getItem(0).getPlayerState().getPrefs().get(Player.Pref.SYNC_VOLUME);
     }
 
     @Override
@@ -188,7 +192,7 @@ public class PlayerListActivity extends ItemListActivity implements
 
     @Override
     public String getSyncPower() {
-        return currentSyncGroup.getItem(0).getPlayerState().prefs.get(Player.Pref.SYNC_POWER);
+        return currentSyncGroup.getItem(0).getPlayerState().getPrefs().get(Player.Pref.SYNC_POWER);
     }
 
     @Override
@@ -220,11 +224,29 @@ public class PlayerListActivity extends ItemListActivity implements
     public void onEventMainThread(HandshakeComplete event) {
         Log.d("PlayerListActivity", "Handshake complete");
         super.onEventMainThread(event);
+        requireService().setPlayerListVisible(true);
         updateAndExpandPlayerList();
     }
 
+    @Override
+    public void onPause() {
+        ISqueezeService service = getService();
+        if (service != null) {
+            service.setPlayerListVisible(false);
+        }
+        super.onPause();
+    }
+
     @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
     public void onEventMainThread(PlayerStateChanged event) {
+        // The list doesn't show the position in the song, and a volume change only affects the
+        // player's own views
+        if (!event.changed(~(PlayerStateChanged.SONG_TIME | PlayerStateChanged.VOLUME))) {
+            if (event.changed(PlayerStateChanged.VOLUME)) {
+                onVolumeChanged(event.player);
+            }
+            return;
+        }
         if (mTrackingTouch == null) {
             updateAndExpandPlayerList();
         } else {
@@ -68,7 +68,9 @@ public class SlideShow extends DialogFragment implements IServiceItemListCallbac
 
     private void nextSlide() {
         currentImage = ++currentImage % images.length;
-        ImageFetcher.getInstance(getContext()).loadImage(images[currentImage].artworkId, artwork);
+        ImageFetcher imageFetcher = ImageFetcher.getInstance(getContext());
+        imageFetcher.loadImage(images[currentImage].artworkId, artwork);
+        imageFetcher.prefetchImage(images[(currentImage + 1) % images.length].artworkId, artwork.getWidth(), artwork.getHeight());
     }
 
     private void prevSlide() {
@@ -31,8 +31,6 @@ import androidx.annotation.StringRes;
 import androidx.appcompat.content.res.AppCompatResources;
 import androidx.core.graphics.drawable.DrawableCompat;
 
-import org.eclipse.jetty.util.ajax.JSON;
-
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -111,7 +109,16 @@ public class JiveItem extends Item {
     }
 
 
-    private String record;
+    /**
+     * The record this item was created from. It is shared with the caller and must not be
+     * modified. The caller may remove the "base" record from it, so use {@link #baseRecord}, and
+     * use {@link #getRecord()} for a copy which includes it.
+     */
+    private Map<String, Object> record;
+
+    /** The "base" record of the page this item belongs to. It is shared by all items on the page. */
+    private Map<String, Object> baseRecord;
+
     private String id;
     @NonNull private String name = "";
     public String text2;
@@ -330,21 +337,31 @@ public class JiveItem extends Item {
         return (playAction != null || addAction != null || insertAction != null || moreAction != null || checkbox != null || radio != null);
     }
 
+    /**
+     * @return A copy of the record this item was created from, including the "base" record, so it
+     * can be persisted and used to recreate this item. Nested values are shared, and must not be
+     * modified.
+     */
     public Map<String, Object> getRecord() {
-        JSON json = new JSON();
-        return (Map) json.fromJSON(this.record);
+        if (record == null) {
+            return null;
+        }
+        Map<String, Object> map = new HashMap<>(record);
+        if (baseRecord != null) {
+            map.put("base", baseRecord);
+        }
+        return map;
     }
 
     public void appendWeight(int weight) {
-        JSON json = new JSON();
-        Map<String, Object> map = (Map) json.fromJSON(this.record);
-        map.put("weight", weight);
-        this.record = json.toJSON(map);
+        // Copy on write, the record is shared
+        record = new HashMap<>(record);
+        record.put("weight", weight);
     }
 
     public JiveItem(Map<String, Object> record) {
-        JSON json = new JSON();
-        this.record = json.toJSON(record);
+        this.record = record;
+        this.baseRecord = getRecord(record, "base");
         setId(getString(record, record.containsKey("cmd") ? "cmd" : "id"));
         splitItemText(getStringOrEmpty(record, record.containsKey("name") ? "name" : "text"));
         textkey = getStringOrEmpty(record, "textkey");
@@ -354,7 +371,6 @@ public class JiveItem extends Item {
         node = originalNode = getString(record, "node");
         weight = getInt(record, "weight");
         type = getString(record, "type");
-        Map<String, Object> baseRecord = getRecord(record, "base");
         Map<String, Object> baseActions = (baseRecord != null ? getRecord(baseRecord, "actions") : null);
         Map<String, Object> baseWindow = (baseRecord != null ? getRecord(baseRecord, "window") : null);
         Map<String, Object> actionsRecord = getRecord(record, "actions");
@@ -21,6 +21,7 @@ import android.os.SystemClock;
 import androidx.annotation.NonNull;
 
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
 
 import uk.org.ngo.squeezer.Util;
@@ -37,7 +38,8 @@ public class Player extends Item implements Comparable<Player> {
 
     private final boolean mCanPowerOff;
 
-    private final PlayerState mPlayerState = new PlayerState();
+    /** Current snapshot of the state of the player, replaced as a whole when the state changes */
+    private volatile PlayerState mPlayerState = new PlayerState();
 
     /** Is the player connected? */
     private boolean mConnected;
@@ -79,11 +81,13 @@ public class Player extends Item implements Comparable<Player> {
         mCanPowerOff = getInt(record, "canpoweroff") == 1;
         mConnected = getInt(record, "connected") == 1;
 
+        Map<Player.Pref, String> prefs = new HashMap<>();
         for (Player.Pref pref : Player.Pref.values()) {
             if (record.containsKey(pref.prefName)) {
-                mPlayerState.prefs.put(pref, Util.getString(record, pref.prefName));
+                prefs.put(pref, Util.getString(record, pref.prefName));
             }
         }
+        mPlayerState.setPrefs(prefs);
     }
 
     private Player(Parcel source) {
@@ -126,11 +130,39 @@ public class Player extends Item implements Comparable<Player> {
         return mConnected;
     }
 
+    /**
+     * @return The current state of the player. The state is a snapshot which is not updated when
+     *     the state of the player changes, and must not be modified.
+     */
     @NonNull
     public PlayerState getPlayerState() {
         return mPlayerState;
     }
 
+    /** A change to the state of a player. */
+    public interface StateUpdate {
+        /**
+         * Apply the change to a copy of the current state.
+         *
+         * @return Bitmask of the changes, see {@link uk.org.ngo.squeezer.service.event.PlayerStateChanged}.
+         */
+        int apply(@NonNull PlayerState.Editor playerState);
+    }
+
+    /**
+     * Change the state of the player. The update is applied to a copy of the current state, which
+     * then replaces the current state, so readers see either the old or the new state in full.
+     * Updates are serialized, so concurrent updates are not lost.
+     *
+     * @return Bitmask of the changes made by the update
+     */
+    public synchronized int updatePlayerState(@NonNull StateUpdate update) {
+        PlayerState playerState = new PlayerState(mPlayerState);
+        int changes = update.apply(new PlayerState.Editor(playerState));
+        mPlayerState = playerState;
+        return changes;
+    }
+
     public static final Creator<Player> CREATOR = new Creator<>() {
         @Override
         public Player[] newArray(int size) {
@@ -184,18 +216,20 @@ public class Player extends Item implements Comparable<Player> {
     }
 
     public SongTimeChanged getTrackElapsed() {
-        return new SongTimeChanged(this, mPlayerState.getTrackElapsed(), mPlayerState.getCurrentSongDuration());
+        PlayerState playerState = mPlayerState;
+        return new SongTimeChanged(this, playerState.getTrackElapsed(), playerState.getCurrentSongDuration());
     }
 
     public int getSleepingIn() {
+        PlayerState playerState = mPlayerState;
         double now = SystemClock.elapsedRealtime() / 1000.0;
-        double correction = now - mPlayerState.statusSeen;
-        double remaining = (correction <= 0 ? mPlayerState.getSleep() : mPlayerState.getSleep() - correction);
+        double correction = now - playerState.getStatusSeen();
+        double remaining = (correction <= 0 ? playerState.getSleep() : playerState.getSleep() - correction);
 
         return (int) remaining;
     }
 
     public boolean isSyncVolume() {
-        return "1".equals(getPlayerState().prefs.get(Player.Pref.SYNC_VOLUME));
+        return "1".equals(getPlayerState().getPrefs().get(Player.Pref.SYNC_VOLUME));
     }
 }
@@ -39,11 +39,45 @@ import uk.org.ngo.squeezer.framework.EnumIdLookup;
 import uk.org.ngo.squeezer.framework.EnumWithId;
 
 
+/**
+ * State of a player.
+ * <p>
+ * The state a {@link Player} holds is a snapshot, which is read from any thread and can't be
+ * modified. To change the state, use {@link Player#updatePlayerState(Player.StateUpdate)}, which
+ * passes an {@link Editor} of a copy to the update, and publishes the copy.
+ */
 public class PlayerState implements Parcelable {
 
     public PlayerState() {
     }
 
+    /** Create a copy of the supplied state, to modify and publish as a new snapshot. */
+    public PlayerState(@NonNull PlayerState other) {
+        poweredOn = other.poweredOn;
+        playStatus = other.playStatus;
+        shuffleStatus = other.shuffleStatus;
+        repeatStatus = other.repeatStatus;
+        currentSong = other.currentSong;
+        currentPlaylist = other.currentPlaylist;
+        currentPlaylistTimestamp = other.currentPlaylistTimestamp;
+        currentPlaylistTracksNum = other.currentPlaylistTracksNum;
+        currentPlaylistIndex = other.currentPlaylistIndex;
+        remote = other.remote;
+        waitingToPlay = other.waitingToPlay;
+        rate = other.rate;
+        currentTimeSecond = other.currentTimeSecond;
+        currentSongDuration = other.currentSongDuration;
+        statusSeen = other.statusSeen;
+        currentVolume = other.currentVolume;
+        sleepDuration = other.sleepDuration;
+        sleep = other.sleep;
+        mPlayR = other.mPlayR;
+        mSyncMaster = other.mSyncMaster;
+        mSyncSlaves = other.mSyncSlaves;
+        mPlayerSubscriptionType = other.mPlayerSubscriptionType;
+        prefs = new HashMap<>(other.prefs);
+    }
+
     public static final Creator<PlayerState> CREATOR = new Creator<PlayerState>() {
         @Override
         public PlayerState[] newArray(int size) {
@@ -126,15 +160,16 @@ public class PlayerState implements Parcelable {
 
     private boolean remote;
 
-    public boolean waitingToPlay;
+    private boolean waitingToPlay;
 
-    public double rate;
+    private double rate;
 
     private double currentTimeSecond;
 
     private int currentSongDuration;
 
-    public double statusSeen;
+    /** Time the last status was received, in seconds of uptime */
+    private double statusSeen;
 
     private int currentVolume = 101;
 
@@ -158,7 +193,42 @@ public class PlayerState implements Parcelable {
 
     /** Map of current values of our the playerprefs we track. See the specific SlimClient */
     @NonNull
-    public Map<Player.Pref, String> prefs = new HashMap<>();
+    private Map<Player.Pref, String> prefs = new HashMap<>();
+
+    public boolean isWaitingToPlay() {
+        return waitingToPlay;
+    }
+
+    void setWaitingToPlay(boolean waitingToPlay) {
+        this.waitingToPlay = waitingToPlay;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /** @return Time the last status was received, in seconds of uptime. */
+    public double getStatusSeen() {
+        return statusSeen;
+    }
+
+    void setStatusSeen(double statusSeen) {
+        this.statusSeen = statusSeen;
+    }
+
+    /** @return The values of the player prefs we track, which can't be modified. */
+    @NonNull
+    public Map<Player.Pref, String> getPrefs() {
+        return Collections.unmodifiableMap(prefs);
+    }
+
+    void setPrefs(@NonNull Map<Player.Pref, String> prefs) {
+        this.prefs = new HashMap<>(prefs);
+    }
 
     public boolean isPlaying() {
         return PLAY_STATE_PLAY.equals(playStatus);
@@ -175,7 +245,7 @@ public class PlayerState implements Parcelable {
         return playStatus;
     }
 
-    public boolean setPlayStatus(@NonNull @PlayState String s) {
+    boolean setPlayStatus(@NonNull @PlayState String s) {
         if (s.equals(playStatus)) {
             return false;
         }
@@ -189,7 +259,7 @@ public class PlayerState implements Parcelable {
         return poweredOn;
     }
 
-    public boolean setPoweredOn(boolean state) {
+    boolean setPoweredOn(boolean state) {
         if (state == poweredOn)
             return false;
 
@@ -201,7 +271,7 @@ public class PlayerState implements Parcelable {
         return shuffleStatus;
     }
 
-    public boolean setShuffleStatus(ShuffleStatus status) {
+    boolean setShuffleStatus(ShuffleStatus status) {
         if (status == shuffleStatus)
             return false;
 
@@ -209,7 +279,7 @@ public class PlayerState implements Parcelable {
         return true;
     }
 
-    public boolean setShuffleStatus(String s) {
+    boolean setShuffleStatus(String s) {
         return setShuffleStatus(s != null ? ShuffleStatus.valueOf(Util.getInt(s)) : null);
     }
 
@@ -217,7 +287,7 @@ public class PlayerState implements Parcelable {
         return repeatStatus;
     }
 
-    public boolean setRepeatStatus(RepeatStatus status) {
+    boolean setRepeatStatus(RepeatStatus status) {
         if (status == repeatStatus)
             return false;
 
@@ -225,7 +295,7 @@ public class PlayerState implements Parcelable {
         return true;
     }
 
-    public boolean setRepeatStatus(String s) {
+    boolean setRepeatStatus(String s) {
         return setRepeatStatus(s != null ? RepeatStatus.valueOf(Util.getInt(s)) : null);
     }
 
@@ -233,7 +303,7 @@ public class PlayerState implements Parcelable {
         return currentSong;
     }
 
-    public boolean setCurrentSong(CurrentPlaylistItem song) {
+    boolean setCurrentSong(CurrentPlaylistItem song) {
         if (song.equals(currentSong))
             return false;
 
@@ -251,7 +321,7 @@ public class PlayerState implements Parcelable {
         return currentPlaylistTimestamp;
     }
 
-    public boolean setCurrentPlaylistTimestamp(long value) {
+    boolean setCurrentPlaylistTimestamp(long value) {
         if (value == currentPlaylistTimestamp)
             return false;
 
@@ -268,18 +338,18 @@ public class PlayerState implements Parcelable {
         return currentPlaylistIndex;
     }
 
-    public void setCurrentPlaylist(@Nullable String playlist) {
+    void setCurrentPlaylist(@Nullable String playlist) {
         if (playlist == null)
             playlist = "";
         currentPlaylist = playlist;
     }
 
     // set the number of tracks in the current playlist
-    public void setCurrentPlaylistTracksNum(int value) {
+    void setCurrentPlaylistTracksNum(int value) {
         currentPlaylistTracksNum = value;
     }
 
-    public void setCurrentPlaylistIndex(int value) {
+    void setCurrentPlaylistIndex(int value) {
         currentPlaylistIndex = value;
     }
 
@@ -287,11 +357,11 @@ public class PlayerState implements Parcelable {
         return remote;
     }
 
-    public void setRemote(boolean remote) {
+    void setRemote(boolean remote) {
         this.remote = remote;
     }
 
-    public boolean setCurrentTimeSecond(double value) {
+    boolean setCurrentTimeSecond(double value) {
         if (value == currentTimeSecond)
             return false;
 
@@ -309,7 +379,7 @@ public class PlayerState implements Parcelable {
         return currentSongDuration;
     }
 
-    public boolean setCurrentSongDuration(int value) {
+    boolean setCurrentSongDuration(int value) {
         if (value == currentSongDuration)
             return false;
 
@@ -325,7 +395,7 @@ public class PlayerState implements Parcelable {
         return (currentVolume == 101 ? 0: Math.abs(currentVolume));
     }
 
-    public boolean setCurrentVolume(int value) {
+    boolean setCurrentVolume(int value) {
         if (value == currentVolume)
             return false;
 
@@ -338,7 +408,7 @@ public class PlayerState implements Parcelable {
         return sleepDuration;
     }
 
-    public boolean setSleepDuration(int sleepDuration) {
+    boolean setSleepDuration(int sleepDuration) {
         if (sleepDuration == this.sleepDuration)
             return false;
 
@@ -356,7 +426,7 @@ public class PlayerState implements Parcelable {
      * @param sleep seconds left until the player sleeps.
      * @return True if the sleep value was changed, false otherwise.
      */
-    public boolean setSleep(double sleep) {
+    boolean setSleep(double sleep) {
         if (sleep == this.sleep)
             return false;
 
@@ -364,7 +434,7 @@ public class PlayerState implements Parcelable {
         return true;
     }
 
-    public boolean setSyncMaster(@Nullable String syncMaster) {
+    boolean setSyncMaster(@Nullable String syncMaster) {
         if (syncMaster == null && mSyncMaster == null)
             return false;
 
@@ -382,7 +452,7 @@ public class PlayerState implements Parcelable {
         return mSyncMaster;
     }
 
-    public boolean setSyncSlaves(@NonNull List<String> syncSlaves) {
+    boolean setSyncSlaves(@NonNull List<String> syncSlaves) {
         if (syncSlaves.equals(mSyncSlaves))
             return false;
 
@@ -398,7 +468,7 @@ public class PlayerState implements Parcelable {
         return mPlayerSubscriptionType;
     }
 
-    public void setSubscriptionType(PlayerSubscriptionType type) {
+    void setSubscriptionType(PlayerSubscriptionType type) {
         mPlayerSubscriptionType = type;
     }
 
@@ -407,10 +477,120 @@ public class PlayerState implements Parcelable {
     }
 
     private static final String TAG = "PlayerState";
-    public void setRandomPlaying(boolean b) {
+    void setRandomPlaying(boolean b) {
         mPlayR = b;
     }
 
+    /**
+     * Changes a copy of the state of a player, in {@link Player#updatePlayerState(Player.StateUpdate)}.
+     * The setters return true if the value changed, where the setters of the state do.
+     */
+    public static final class Editor {
+        private final PlayerState state;
+
+        Editor(@NonNull PlayerState state) {
+            this.state = state;
+        }
+
+        /** @return The state being changed, with the changes made so far. */
+        @NonNull
+        public PlayerState getState() {
+            return state;
+        }
+
+        public boolean setPlayStatus(@NonNull @PlayState String s) {
+            return state.setPlayStatus(s);
+        }
+
+        public boolean setPoweredOn(boolean poweredOn) {
+            return state.setPoweredOn(poweredOn);
+        }
+
+        public boolean setShuffleStatus(String s) {
+            return state.setShuffleStatus(s);
+        }
+
+        public boolean setRepeatStatus(String s) {
+            return state.setRepeatStatus(s);
+        }
+
+        public boolean setCurrentSong(CurrentPlaylistItem song) {
+            return state.setCurrentSong(song);
+        }
+
+        public boolean setCurrentPlaylistTimestamp(long value) {
+            return state.setCurrentPlaylistTimestamp(value);
+        }
+
+        public void setCurrentPlaylist(@Nullable String playlist) {
+            state.setCurrentPlaylist(playlist);
+        }
+
+        public void setCurrentPlaylistTracksNum(int value) {
+            state.setCurrentPlaylistTracksNum(value);
+        }
+
+        public void setCurrentPlaylistIndex(int value) {
+            state.setCurrentPlaylistIndex(value);
+        }
+
+        public void setRemote(boolean remote) {
+            state.setRemote(remote);
+        }
+
+        public void setWaitingToPlay(boolean waitingToPlay) {
+            state.setWaitingToPlay(waitingToPlay);
+        }
+
+        public void setRate(double rate) {
+            state.setRate(rate);
+        }
+
+        public void setStatusSeen(double statusSeen) {
+            state.setStatusSeen(statusSeen);
+        }
+
+        public boolean setCurrentTimeSecond(double value) {
+            return state.setCurrentTimeSecond(value);
+        }
+
+        public boolean setCurrentSongDuration(int value) {
+            return state.setCurrentSongDuration(value);
+        }
+
+        public boolean setCurrentVolume(int value) {
+            return state.setCurrentVolume(value);
+        }
+
+        public boolean setSleepDuration(int sleepDuration) {
+            return state.setSleepDuration(sleepDuration);
+        }
+
+        public boolean setSleep(double sleep) {
+            return state.setSleep(sleep);
+        }
+
+        public boolean setSyncMaster(@Nullable String syncMaster) {
+            return state.setSyncMaster(syncMaster);
+        }
+
+        public boolean setSyncSlaves(@NonNull List<String> syncSlaves) {
+            return state.setSyncSlaves(syncSlaves);
+        }
+
+        public void setSubscriptionType(PlayerSubscriptionType type) {
+            state.setSubscriptionType(type);
+        }
+
+        public void setRandomPlaying(boolean randomPlaying) {
+            state.setRandomPlaying(randomPlaying);
+        }
+
+        public void setPrefs(@NonNull Map<Player.Pref, String> prefs) {
+            state.setPrefs(prefs);
+        }
+    }
+
     @StringDef({PLAY_STATE_PLAY, PLAY_STATE_PAUSE, PLAY_STATE_STOP})
     @Retention(RetentionPolicy.SOURCE)
     public @interface PlayState {}
@@ -16,12 +16,17 @@
 
 package uk.org.ngo.squeezer.service;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -35,17 +40,19 @@ import uk.org.ngo.squeezer.model.Player;
 import uk.org.ngo.squeezer.model.PlayerState;
 import uk.org.ngo.squeezer.model.SlimCommand;
 import uk.org.ngo.squeezer.service.event.MusicChanged;
-import uk.org.ngo.squeezer.service.event.PlayStatusChanged;
 import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
 import uk.org.ngo.squeezer.service.event.PlayerVolume;
 import uk.org.ngo.squeezer.service.event.PlaylistChanged;
-import uk.org.ngo.squeezer.service.event.PowerStatusChanged;
-import uk.org.ngo.squeezer.service.event.RepeatStatusChanged;
-import uk.org.ngo.squeezer.service.event.ShuffleStatusChanged;
 
 abstract class BaseClient implements SlimClient {
     final static int mPageSize = Squeezer.getInstance().getResources().getInteger(R.integer.PageSize);
 
+    /** Decides the number of items in each response to browse requests. */
+    final ChunkSizer mChunkSizer = new ChunkSizer(
+            Squeezer.getInstance().getResources().getInteger(R.integer.BrowseFirstChunk),
+            mPageSize,
+            Squeezer.getInstance().getResources().getInteger(R.integer.BrowseChunkTime));
+
     final AtomicReference<String> username = new AtomicReference<>();
     final AtomicReference<String> password = new AtomicReference<>();
 
@@ -57,6 +64,38 @@ abstract class BaseClient implements SlimClient {
     /** The prefix for URLs for downloads and cover art. */
     String mUrlPrefix;
 
+    /**
+     * Time in milliseconds to collect player state and volume changes for, about one frame. A
+     * handler delay rather than the next frame of the display is used, so the service still gets
+     * the changes when the screen is off, to update the media session and the notification.
+     */
+    private static final long EVENT_DELAY = 16;
+
+    /**
+     * Player state changes waiting to be delivered. Changes to a player within
+     * {@link #EVENT_DELAY} are delivered as one event.
+     */
+    final EventCoalescer<String, PlayerStateChanged> mPlayerStateChanges = new EventCoalescer<>(
+            (pending, event) -> new PlayerStateChanged(event.player, event.playerState, pending.changes | event.changes));
+
+    /** Volume changes waiting to be delivered. Only the latest change to a player is delivered. */
+    final EventCoalescer<String, PlayerVolume> mPlayerVolumeChanges = new EventCoalescer<>((pending, event) -> event);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Whether delivery of the pending events is scheduled */
+    private final AtomicBoolean mDeliveryScheduled = new AtomicBoolean();
+
+    private final Runnable mDeliverPendingEvents = () -> {
+        mDeliveryScheduled.set(false);
+        for (PlayerStateChanged event : mPlayerStateChanges.drain()) {
+            mEventBus.post(event);
+        }
+        for (PlayerVolume event : mPlayerVolumeChanges.drain()) {
+            mEventBus.post(event);
+        }
+    };
+
     BaseClient(@NonNull EventBus eventBus) {
         mEventBus = eventBus;
         mConnectionState = new ConnectionState(eventBus);
@@ -69,7 +108,9 @@ abstract class BaseClient implements SlimClient {
 
     @Override
     public <T> void requestItems(Player player, String[] cmd, Map<String, Object> params, int start, int pageSize, IServiceItemListCallback<T> callback) {
-        final BaseClient.BrowseRequest<T> browseRequest = new BaseClient.BrowseRequest<>(player, cmd, params, start, pageSize, callback);
+        // Pages are fetched in chunks, see ChunkSizer
+        int itemsPerResponse = (start < 0 || !callback.canReceiveChunks() ? pageSize : Math.min(pageSize, mChunkSizer.firstChunk(start)));
+        final BaseClient.BrowseRequest<T> browseRequest = new BaseClient.BrowseRequest<>(player, cmd, params, start, itemsPerResponse, callback);
         internalRequestItems(browseRequest);
     }
 
@@ -91,74 +132,47 @@ abstract class BaseClient implements SlimClient {
     }
 
     void parseStatus(final Player player, CurrentPlaylistItem currentSong, Map<String, Object> tokenMap) {
+        final CurrentPlaylistItem song = (currentSong != null ? currentSong : new CurrentPlaylistItem(tokenMap));
+
+        // Apply the status to a copy of the state, which replaces the current state in one go, so
+        // readers on other threads never see a partly updated state.
+        int changes = player.updatePlayerState(playerState -> {
+            int changed = 0;
+            playerState.setStatusSeen(SystemClock.elapsedRealtime() / 1000.0);
+
+            if (playerState.setPoweredOn(Util.getInt(tokenMap, "power") == 1)) changed |= PlayerStateChanged.POWER;
+            if (playerState.setShuffleStatus(Util.getString(tokenMap, "playlist shuffle"))) changed |= PlayerStateChanged.SHUFFLE;
+            if (playerState.setRepeatStatus(Util.getString(tokenMap, "playlist repeat"))) changed |= PlayerStateChanged.REPEAT;
+            if (playerState.setCurrentPlaylistTimestamp(Util.getLong(tokenMap, "playlist_timestamp"))) changed |= PlayerStateChanged.PLAYLIST;
+            playerState.setCurrentPlaylistTracksNum(Util.getInt(tokenMap, "playlist_tracks"));
+            playerState.setCurrentPlaylistIndex(Util.getInt(tokenMap, "playlist_cur_index"));
+            playerState.setCurrentPlaylist(Util.getString(tokenMap, "playlist_name"));
+            if (playerState.setSleep(Util.getInt(tokenMap, "will_sleep_in"))) changed |= PlayerStateChanged.SLEEP;
+            if (playerState.setSleepDuration(Util.getInt(tokenMap, "sleep"))) changed |= PlayerStateChanged.SLEEP;
+            if (playerState.setCurrentSong(song)) changed |= PlayerStateChanged.SONG;
+            playerState.setRemote(Util.getInt(tokenMap, "remote") == 1);
+            playerState.setWaitingToPlay(Util.getInt(tokenMap, "waitingToPlay") == 1);
+            playerState.setRate(Util.getDouble(tokenMap, "rate"));
+            if (playerState.setCurrentSongDuration(Util.getInt(tokenMap, "duration"))) changed |= PlayerStateChanged.SONG_TIME;
+            if (playerState.setCurrentTimeSecond(Util.getDouble(tokenMap, "time"))) changed |= PlayerStateChanged.SONG_TIME;
+            if (playerState.setCurrentVolume(Util.getInt(tokenMap, "mixer volume"))) changed |= PlayerStateChanged.VOLUME;
+            if (playerState.setSyncMaster(Util.getString(tokenMap, "sync_master"))) changed |= PlayerStateChanged.SYNC;
+            if (playerState.setSyncSlaves(Arrays.stream(Util.getStringOrEmpty(tokenMap, "sync_slaves").split(",")).filter(it -> !it.isEmpty()).collect(Collectors.toList()))) changed |= PlayerStateChanged.SYNC;
+            if (updatePlayStatus(playerState, Util.getString(tokenMap, "mode"))) changed |= PlayerStateChanged.PLAY_STATUS;
+            return changed;
+        });
         PlayerState playerState = player.getPlayerState();
-        playerState.statusSeen = SystemClock.elapsedRealtime() / 1000.0;
-
-        boolean changedPower = playerState.setPoweredOn(Util.getInt(tokenMap, "power") == 1);
-        boolean changedShuffleStatus = playerState.setShuffleStatus(Util.getString(tokenMap, "playlist shuffle"));
-        boolean changedRepeatStatus = playerState.setRepeatStatus(Util.getString(tokenMap, "playlist repeat"));
-        boolean changedPlaylist = playerState.setCurrentPlaylistTimestamp(Util.getLong(tokenMap, "playlist_timestamp"));
-        playerState.setCurrentPlaylistTracksNum(Util.getInt(tokenMap, "playlist_tracks"));
-        playerState.setCurrentPlaylistIndex(Util.getInt(tokenMap, "playlist_cur_index"));
-        playerState.setCurrentPlaylist(Util.getString(tokenMap, "playlist_name"));
-        boolean changedSleep = playerState.setSleep(Util.getInt(tokenMap, "will_sleep_in"));
-        boolean changedSleepDuration = playerState.setSleepDuration(Util.getInt(tokenMap, "sleep"));
-        if (currentSong == null) currentSong = new CurrentPlaylistItem(tokenMap);
-        boolean changedSong = playerState.setCurrentSong(currentSong);
-        playerState.setRemote(Util.getInt(tokenMap, "remote") == 1);
-        playerState.waitingToPlay = Util.getInt(tokenMap, "waitingToPlay") == 1;
-        playerState.rate = Util.getDouble(tokenMap, "rate");
-        boolean changedSongDuration = playerState.setCurrentSongDuration(Util.getInt(tokenMap, "duration"));
-        boolean changedSongTime = playerState.setCurrentTimeSecond(Util.getDouble(tokenMap, "time"));
-        boolean changedVolume = playerState.setCurrentVolume(Util.getInt(tokenMap, "mixer volume"));
-        boolean changedSyncMaster = playerState.setSyncMaster(Util.getString(tokenMap, "sync_master"));
-        boolean changedSyncSlaves = playerState.setSyncSlaves(Arrays.stream(Util.getStringOrEmpty(tokenMap, "sync_slaves").split(",")).filter(it -> !it.isEmpty()).collect(Collectors.toList()));
-        boolean changedPlayStatus = updatePlayStatus(playerState, Util.getString(tokenMap, "mode"));
-
-        // Playing status
-        if (changedPlayStatus) {
-            mEventBus.post(new PlayStatusChanged(playerState.getPlayStatus(), player));
-        }
-
-        // Current playlist
-        if (changedPlaylist) {
-            mEventBus.postSticky(new PlaylistChanged(player));
-        }
-
-        if (changedPower || changedSleep || changedSleepDuration || changedVolume
-                || changedSong || changedSongDuration || changedSongTime
-                || changedSyncMaster || changedSyncSlaves) {
-            postPlayerStateChanged(player);
-        }
-
-        // Volume
-        if (changedVolume) {
-            mEventBus.post(new PlayerVolume(player));
-        }
 
-        // Power status
-        if (changedPower) {
-            mEventBus.post(new PowerStatusChanged(player));
+        // Sticky events, which late subscribers need to see
+        if ((changes & PlayerStateChanged.PLAYLIST) != 0) {
+            mEventBus.postSticky(new PlaylistChanged(player));
         }
-
-        // Current song
-        if (changedSong) {
+        if ((changes & PlayerStateChanged.SONG) != 0) {
             mEventBus.postSticky(new MusicChanged(player, playerState));
         }
 
-        // Shuffle status.
-        if (changedShuffleStatus) {
-            mEventBus.post(new ShuffleStatusChanged(player, playerState.getShuffleStatus()));
-        }
-
-        // Repeat status.
-        if (changedRepeatStatus) {
-            mEventBus.post(new RepeatStatusChanged(player, playerState.getRepeatStatus()));
-        }
-
-        // Position in song
-        if (changedSongDuration || changedSongTime || changedPlayStatus) {
-            postSongTimeChanged(player);
+        if (changes != 0) {
+            postPlayerStateChanged(player, playerState, changes);
         }
     }
 
@@ -166,11 +180,24 @@ abstract class BaseClient implements SlimClient {
         mEventBus.post(player.getTrackElapsed());
     }
 
-    protected void postPlayerStateChanged(Player player) {
-        mEventBus.post(new PlayerStateChanged(player));
+    protected void postPlayerStateChanged(Player player, PlayerState playerState, int changes) {
+        mPlayerStateChanges.add(player.getId(), new PlayerStateChanged(player, playerState, changes));
+        scheduleDelivery();
+    }
+
+    void postPlayerVolume(Player player) {
+        mPlayerVolumeChanges.add(player.getId(), new PlayerVolume(player));
+        scheduleDelivery();
+    }
+
+    /** Deliver the pending events on the main thread after {@link #EVENT_DELAY}. */
+    private void scheduleDelivery() {
+        if (mDeliveryScheduled.compareAndSet(false, true)) {
+            mMainHandler.postDelayed(mDeliverPendingEvents, EVENT_DELAY);
+        }
     }
 
-    private boolean updatePlayStatus(PlayerState playerState, String playStatus) {
+    private boolean updatePlayStatus(PlayerState.Editor playerState, String playStatus) {
         // Handle unknown states.
         if (!playStatus.equals(PlayerState.PLAY_STATE_PLAY) &&
                 !playStatus.equals(PlayerState.PLAY_STATE_PAUSE) &&
@@ -187,6 +214,12 @@ abstract class BaseClient implements SlimClient {
         private int start;
         private int itemsPerResponse;
         private final IServiceItemListCallback<T> callback;
+        /** Time the current request was sent, in milliseconds of uptime. 0 if answered from the cache. */
+        private long sentTime;
+        /** Key to cache the current page under, null if it is not cached */
+        private String cacheKey;
+        /** Records of the current page received so far, if it is cached */
+        private List<Object> pageRecords;
 
         BrowseRequest(Player player, String[] cmd, Map<String, Object> params, int start, int itemsPerResponse, IServiceItemListCallback<T> callback) {
             this.player = player;
@@ -220,6 +253,32 @@ abstract class BaseClient implements SlimClient {
             return itemsPerResponse;
         }
 
+        void setSentTime(long sentTime) {
+            this.sentTime = sentTime;
+        }
+
+        long getSentTime() {
+            return sentTime;
+        }
+
+        /** Start a new page, which is cached under the supplied key if it isn't null. */
+        void startPage(String cacheKey) {
+            this.cacheKey = cacheKey;
+            this.pageRecords = (cacheKey != null ? new ArrayList<>() : null);
+        }
+
+        void addPageRecord(Object record) {
+            pageRecords.add(record);
+        }
+
+        List<Object> getPageRecords() {
+            return pageRecords;
+        }
+
+        String getCacheKey() {
+            return cacheKey;
+        }
+
         public IServiceItemListCallback<T> getCallback() {
             return callback;
         }
@@ -1,14 +1,9 @@
 package uk.org.ngo.squeezer.service;
 
-import androidx.fragment.app.Fragment.InstantiationException;
-
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import uk.org.ngo.squeezer.util.Reflection;
-
 /**
  * Base class that constructs a list of model objects based on CLI results from
  * the server.
@@ -20,11 +15,14 @@ abstract class BaseListHandler<T> implements ListHandler<T> {
 
     private List<T> items;
 
-    @SuppressWarnings("unchecked")
-    private final Class<T> dataType = (Class<T>) Reflection
-            .getGenericClass(this.getClass(), ListHandler.class, 0);
+    private final Class<T> dataType;
+
+    private final ItemFactories.ItemFactory<T> factory;
 
-    private Constructor<T> constructor;
+    BaseListHandler(Class<T> dataType) {
+        this.dataType = dataType;
+        this.factory = ItemFactories.get(dataType);
+    }
 
     @Override
     public Class<T> getDataType() {
@@ -45,19 +43,15 @@ abstract class BaseListHandler<T> implements ListHandler<T> {
 
     @Override
     public void add(Map<String, Object> record) {
-        if (constructor == null) {
-            try {
-                constructor = dataType.getDeclaredConstructor(Map.class);
-            } catch (Exception e) {
-                throw new InstantiationException(
-                        "Unable to create constructor for " + dataType.getName(), e);
-            }
-        }
-        try {
-            items.add(constructor.newInstance(record));
-        } catch (Exception e) {
-            throw new InstantiationException("Unable to create new " + dataType.getName(), e);
-        }
+        items.add(create(record));
+    }
+
+    /**
+     * Create an item from the record, without adding it to the list. Use this to build the items
+     * of a reply in a list of its own, when replies may be parsed on more than one thread.
+     */
+    T create(Map<String, Object> record) {
+        return factory.create(record);
     }
 
 }
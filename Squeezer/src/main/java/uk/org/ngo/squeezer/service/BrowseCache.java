@@ -0,0 +1,203 @@
+package uk.org.ngo.squeezer.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import uk.org.ngo.squeezer.util.DiskLruCache;
+import uk.org.ngo.squeezer.util.ImageCache;
+
+/**
+ * Disk cache of pages of responses to browse requests for the music library.
+ * <p>
+ * Only commands which list the library are cached, so the responses only change when the library
+ * is rescanned. The key includes the time of the last scan as reported in the server status, so
+ * responses from before a rescan are never used, and they are eventually evicted when the cache is
+ * full. While the server is scanning, and before the first server status is received, the cache
+ * is bypassed.
+ * <p>
+ * The key does not include the player, so a response is shared by all players of a server.
+ */
+class BrowseCache {
+    private static final String TAG = BrowseCache.class.getSimpleName();
+
+    private static final int VALUE_INDEX = 0;
+
+    /** Commands which list the library */
+    private static final Set<String> LIBRARY_COMMANDS = new HashSet<>(Arrays.asList(
+            "artists", "albums", "genres", "years", "roles", "titles", "tracks", "songs", "browselibrary"
+    ));
+
+    /** Modes of browselibrary which do not list the library, or list it in random order */
+    private static final Set<String> UNCACHEABLE_MODES = new HashSet<>(Arrays.asList(
+            "playlists", "playlistTracks", "randomalbums", "favorites"
+    ));
+
+    private final File mDirectory;
+    private final long mMaxSize;
+
+    @Nullable
+    private DiskLruCache mDiskLruCache;
+
+    /** Time of the last library scan, null if not known or if a scan is in progress */
+    @Nullable
+    private volatile String mLastScan;
+
+    private final Stats mStats = new Stats();
+
+    /**
+     * @param directory Directory for the cache
+     * @param maxSize Maximum size of the cache in bytes
+     */
+    BrowseCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Update the state of the library from the server status.
+     *
+     * @param lastScan Time of the last library scan
+     * @param scanning True if the server is scanning the library
+     */
+    void setLibraryState(@Nullable String lastScan, boolean scanning) {
+        mLastScan = (scanning ? null : lastScan);
+    }
+
+    /**
+     * The key is for a whole page of the list, so it doesn't depend on the size of the chunks the
+     * page is fetched in.
+     *
+     * @return The key to cache the supplied page of a browse request under, or null if it can't be
+     * cached.
+     */
+    @Nullable
+    String getKey(String server, List<String> cmd, Map<String, Object> params, int pageStart, int pageSize) {
+        String lastScan = mLastScan;
+        if (lastScan == null || cmd.isEmpty() || !LIBRARY_COMMANDS.contains(cmd.get(0))) {
+            return null;
+        }
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            Object value = entry.getValue();
+            if ("mode".equals(entry.getKey()) && UNCACHEABLE_MODES.contains(value)) {
+                return null;
+            }
+            if (value != null && value.toString().contains("random")) {
+                return null;
+            }
+        }
+
+        return ImageCache.hashKeyForDisk(server + ' ' + lastScan + ' ' + cmd + ' ' + new TreeMap<>(params)
+                + ' ' + pageStart + ' ' + pageSize);
+    }
+
+    /**
+     * @return The cached response for the supplied key, or null if there is none.
+     */
+    @Nullable
+    synchronized String get(@NonNull String key) {
+        DiskLruCache cache = open();
+        if (cache != null) {
+            try (DiskLruCache.Snapshot snapshot = cache.get(key)) {
+                if (snapshot != null) {
+                    mStats.hits++;
+                    return snapshot.getString(VALUE_INDEX);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "get: " + e);
+            }
+        }
+        mStats.misses++;
+        return null;
+    }
+
+    /**
+     * Store a response in the cache.
+     */
+    synchronized void put(@NonNull String key, @NonNull String value) {
+        DiskLruCache cache = open();
+        if (cache != null) {
+            try {
+                DiskLruCache.Editor editor = cache.edit(key);
+                if (editor != null) {
+                    editor.set(VALUE_INDEX, value);
+                    editor.commit();
+                    mStats.puts++;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "put: " + e);
+            }
+        }
+    }
+
+    /** Flush the journal of the cache to disk. */
+    synchronized void flush() {
+        if (mDiskLruCache != null) {
+            try {
+                mDiskLruCache.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "flush: " + e);
+            }
+        }
+    }
+
+    /** @return A snapshot of the counters of this cache. */
+    synchronized Stats getStats() {
+        Stats stats = new Stats(mStats);
+        stats.size = (mDiskLruCache != null ? mDiskLruCache.size() : 0);
+        return stats;
+    }
+
+    @Nullable
+    private DiskLruCache open() {
+        if (mDiskLruCache == null || mDiskLruCache.isClosed()) {
+            try {
+                if (!mDirectory.exists()) {
+                    mDirectory.mkdirs();
+                }
+                mDiskLruCache = DiskLruCache.open(mDirectory, 1, 1, mMaxSize);
+            } catch (IOException e) {
+                Log.e(TAG, "Can't open browse cache in " + mDirectory + ": " + e);
+                mDiskLruCache = null;
+            }
+        }
+        return mDiskLruCache;
+    }
+
+    static class Stats {
+        int hits;
+        int misses;
+        int puts;
+        long size;
+
+        private Stats() {
+        }
+
+        private Stats(Stats other) {
+            hits = other.hits;
+            misses = other.misses;
+            puts = other.puts;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", puts=" + puts +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+}
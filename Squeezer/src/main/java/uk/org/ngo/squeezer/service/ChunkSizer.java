@@ -0,0 +1,90 @@
+package uk.org.ngo.squeezer.service;
+
+/**
+ * Chooses how many items to request in each response to a browse request.
+ * <p>
+ * The first chunk of a list is small, so the first rows can be shown quickly. Later chunks grow
+ * until a response takes about as long to deliver as the target time, or as long as the round
+ * trip to the server if that is longer, so the latency is amortized over more items on a slow
+ * connection. No chunk is larger than a page.
+ * <p>
+ * The round trip time and the time per item are estimated from the responses. The time per item
+ * covers transfer and parsing, so it grows with the size of the items.
+ * <p>
+ * Times are supplied by the caller, so this class has no dependency on the Android clock.
+ */
+class ChunkSizer {
+    /** Maximum factor to grow a chunk by, compared to the previous chunk */
+    private static final int MAX_GROWTH = 4;
+
+    private final int mFirstChunk;
+    private final int mMaxChunk;
+    private final long mTargetTime;
+
+    /** Smoothed time in milliseconds for a response to a request for a small chunk */
+    private float mLatency = -1;
+
+    /** Smoothed time in milliseconds per item, in excess of the latency */
+    private float mItemTime = -1;
+
+    /**
+     * @param firstChunk Number of items in the first response of a list
+     * @param maxChunk Maximum number of items in a response
+     * @param targetTime Desired time in milliseconds to deliver a response
+     */
+    ChunkSizer(int firstChunk, int maxChunk, long targetTime) {
+        mMaxChunk = Math.max(1, maxChunk);
+        mFirstChunk = Math.max(1, Math.min(firstChunk, mMaxChunk));
+        mTargetTime = targetTime;
+    }
+
+    /**
+     * @return Number of items to request in the first response for the page at
+     * <code>start</code>.
+     */
+    synchronized int firstChunk(int start) {
+        return (start == 0 ? mFirstChunk : nextChunk(mFirstChunk));
+    }
+
+    /**
+     * @return Number of items to request in the response after a response with
+     * <code>previous</code> items.
+     */
+    synchronized int nextChunk(int previous) {
+        int chunk = previous * MAX_GROWTH;
+        if (mItemTime > 0) {
+            float time = Math.max(mTargetTime, mLatency);
+            chunk = Math.min(chunk, (int) (time / mItemTime));
+        }
+        return Math.max(mFirstChunk, Math.min(mMaxChunk, chunk));
+    }
+
+    /**
+     * Register the time it took to get a response.
+     *
+     * @param items Number of items in the response
+     * @param time Time in milliseconds from the request was sent until it was parsed
+     */
+    synchronized void onResponse(int items, long time) {
+        if (items <= 0 || time < 0) {
+            return;
+        }
+        if (items <= mFirstChunk || mLatency < 0) {
+            mLatency = (mLatency < 0 ? time : (3 * mLatency + time) / 4);
+        }
+        if (items > mFirstChunk) {
+            float itemTime = Math.max(0, time - mLatency) / items;
+            if (itemTime > 0) {
+                mItemTime = (mItemTime < 0 ? itemTime : (3 * mItemTime + itemTime) / 4);
+            }
+        }
+    }
+
+    synchronized float getLatency() {
+        return mLatency;
+    }
+
+    synchronized float getItemTime() {
+        return mItemTime;
+    }
+}
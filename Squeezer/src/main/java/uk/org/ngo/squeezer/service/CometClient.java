@@ -19,6 +19,7 @@ package uk.org.ngo.squeezer.service;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -28,31 +29,29 @@ import android.util.Log;
 import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.Message;
 import org.cometd.bayeux.client.ClientSessionChannel;
-import org.cometd.client.transport.ClientTransport;
+import org.cometd.common.HashMapMessage;
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.http.HttpField;
-import org.eclipse.jetty.http.HttpHeader;
-import org.eclipse.jetty.util.B64Code;
+import org.eclipse.jetty.util.ajax.JSON;
 
-import java.net.Authenticator;
-import java.net.PasswordAuthentication;
+import java.io.File;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 
 import uk.org.ngo.squeezer.Preferences;
+import uk.org.ngo.squeezer.R;
 import uk.org.ngo.squeezer.Squeezer;
 import uk.org.ngo.squeezer.Util;
 import uk.org.ngo.squeezer.model.AlertWindow;
@@ -69,13 +68,17 @@ import uk.org.ngo.squeezer.model.SlimCommand;
 import uk.org.ngo.squeezer.model.Song;
 import uk.org.ngo.squeezer.service.event.AlertEvent;
 import uk.org.ngo.squeezer.service.event.DisplayEvent;
+import uk.org.ngo.squeezer.service.event.ActivePlayerChanged;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
+import uk.org.ngo.squeezer.service.event.HomeMenuEvent;
 import uk.org.ngo.squeezer.model.MenuStatusMessage;
-import uk.org.ngo.squeezer.service.event.PlayerVolume;
+import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
 import uk.org.ngo.squeezer.service.event.RegisterSqueezeNetwork;
 import uk.org.ngo.squeezer.util.FluentHashMap;
+import uk.org.ngo.squeezer.util.ImageCache;
 import uk.org.ngo.squeezer.util.Reflection;
 import uk.org.ngo.squeezer.util.SendWakeOnLan;
+import uk.org.ngo.squeezer.util.SharedHttpClient;
 
 class CometClient extends BaseClient {
     private static final String TAG = CometClient.class.getSimpleName();
@@ -101,6 +104,9 @@ class CometClient extends BaseClient {
     /** The format string for the channel to listen to for player status events. */
     private static final String CHANNEL_PLAYER_STATUS_FORMAT = "/%s/slim/playerstatus/%s";
 
+    /** Part of the channel of player status events which precedes the player id */
+    private static final String PLAYER_STATUS_CHANNEL_PART = "/slim/playerstatus/";
+
     /** The format string for the channel to listen to for display status events. */
     private static final String CHANNEL_DISPLAY_STATUS_FORMAT = "/%s/slim/displaystatus/%s";
 
@@ -110,10 +116,33 @@ class CometClient extends BaseClient {
     // Maximum time to wait for replies for server capabilities
     private static final long HANDSHAKE_TIMEOUT = 4_000;
 
+    /** Time in milliseconds to keep trying to resume a session after its connection is lost. */
+    private static final long RESUME_WINDOW = 20_000;
+
+    /** Time in milliseconds between attempts to resume a session. */
+    private static final long RESUME_RETRY_INTERVAL = 1_000;
+
+    /** Time in milliseconds to collect changes before the snapshot of the state is saved. */
+    private static final long SNAPSHOT_DELAY = 5_000;
+
     // The time interval in seconds between server status messages in case nothing happened to the server info in the interval.
     public static long SERVER_STATUS_INTERVAL = 60;
     public static final long SERVER_STATUS_TIMEOUT = SERVER_STATUS_INTERVAL * 1_000 + 10_000;
 
+    /** Maximum number of publishes waiting for a publish response. */
+    private static final int PUBLISH_WINDOW_SIZE = Squeezer.getInstance().getResources().getInteger(R.integer.PublishWindowSize);
+
+    /** Time in milliseconds to wait for a publish response, before the publish is given up. */
+    private static final long PUBLISH_TIMEOUT = Squeezer.getInstance().getResources().getInteger(R.integer.PublishTimeout);
+
+    /** Maximum number of publishes to send in one HTTP request. */
+    private static final int PUBLISH_BATCH_SIZE = Squeezer.getInstance().getResources().getInteger(R.integer.PublishBatchSize);
+
+    /** Time in milliseconds to collect publishes before they are sent in one HTTP request. */
+    private static final long PUBLISH_BATCH_TICK = Squeezer.getInstance().getResources().getInteger(R.integer.PublishBatchTick);
+
+    /** Maximum size in bytes of the disk cache of library browse responses. */
+    private static final long BROWSE_CACHE_SIZE = Squeezer.getInstance().getResources().getInteger(R.integer.BrowseCacheSize);
 
     /** Handler for off-main-thread work. */
     @NonNull
@@ -122,6 +151,9 @@ class CometClient extends BaseClient {
     /** Map from an item request command ("players") to the listener class for responses. */
     private final Map<Class<?>, ItemListener<?>> mItemRequestMap;
 
+    /** Cache of the listener for responses for each item list callback class. */
+    private final Map<Class<?>, ItemListener<?>> mCallbackListeners = new ConcurrentHashMap<>();
+
     /** Map from a request to the listener class for responses. */
     private  final Map<String, ResponseHandler> mRequestMap;
 
@@ -134,11 +166,43 @@ class CometClient extends BaseClient {
 
     private final Map<String, BrowseRequest<?>> mPendingBrowseRequests = new ConcurrentHashMap<>();
 
-    private final Queue<PublishMessage> mCommandQueue = new LinkedList<>();
-    private boolean mCurrentCommand;
+    /** Time the connection was lost while we try to resume the session, otherwise 0. */
+    private volatile long mConnectionLostTime;
+
+    /** Address of the server we connect to */
+    @Nullable
+    private volatile String mServer;
+
+    /** Directory of the snapshots of the state of each server */
+    private final File mSnapshotDirectory = new File(Squeezer.getInstance().getFilesDir(), "snapshots");
+
+    /** Records of the players in the last server status, for the snapshot */
+    private volatile List<Map<String, Object>> mPlayerRecords = Collections.emptyList();
+
+    /** The last status of each player by player id, for the snapshot */
+    private final Map<String, Map<String, Object>> mPlayerStatus = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the players whose status is restored from the snapshot, and which haven't had a live
+     * status since. Their song time and sleep timer are not updated, as they aren't running.
+     */
+    private final Set<String> mRestoredPlayers = ConcurrentHashMap.newKeySet();
+
+    /** How closely to follow the status of each player */
+    private final SubscriptionPolicy mSubscriptionPolicy = new SubscriptionPolicy();
+
+    /** Publishes waiting to be sent, or waiting for a publish response. */
+    private final PublishWindow<PublishMessage> mPublishWindow = new PublishWindow<>(PUBLISH_WINDOW_SIZE);
+
+    /** Publishes to send in the next HTTP request. Only accessed from the handler thread. */
+    private final List<PublishMessage> mPublishBatch = new ArrayList<>();
 
     private final PublishListener mPublishListener = new PublishListener();
 
+    /** Responses to library browse requests. Read from the handler thread. */
+    private final BrowseCache mBrowseCache = new BrowseCache(
+            ImageCache.getDiskCacheDir(Squeezer.getInstance(), "browse"), BROWSE_CACHE_SIZE);
+
     // All requests are tagged with a correlation id, which can be used when
     // asynchronous responses are received.
     private volatile int mCorrelationId = 0;
@@ -175,9 +239,8 @@ class CometClient extends BaseClient {
                         String volume = (String) message.getDataAsMap().get("_volume");
                         if (volume != null) {
                             int newVolume = Integer.parseInt(volume);
-                            PlayerState playerState = player.getPlayerState();
-                            playerState.setCurrentVolume(newVolume);
-                            mEventBus.post(new PlayerVolume(player));
+                            player.updatePlayerState(playerState -> playerState.setCurrentVolume(newVolume) ? PlayerStateChanged.VOLUME : 0);
+                            postPlayerVolume(player);
                         } else {
                             // Since LMS doesn't send player status when volume is updated via a synced player we order them explicitly
                             if (player.isSyncVolume()) {
@@ -213,6 +276,7 @@ class CometClient extends BaseClient {
                 SendWakeOnLan.sendWakeOnLan(serverAddress.mac);
             }
             Log.i(TAG, "Connecting to: " + username + "@" + serverAddress.address());
+            mServer = serverAddress.address();
 
             if (!mEventBus.isRegistered(CometClient.this)) {
                 mEventBus.register(CometClient.this);
@@ -221,10 +285,10 @@ class CometClient extends BaseClient {
             mConnectionState.setConnectionState(ConnectionState.CONNECTION_STARTED);
             final boolean isSqueezeNetwork = serverAddress.squeezeNetwork;
 
-            final HttpClient httpClient = new HttpClient();
-            httpClient.setUserAgentField(new HttpField(HttpHeader.USER_AGENT, "Squeezer-squeezer/" + SqueezerBayeuxExtension.getRevision()));
+            final SharedHttpClient sharedHttpClient = SharedHttpClient.getInstance();
+            final HttpClient httpClient;
             try {
-                httpClient.start();
+                httpClient = sharedHttpClient.getHttpClient();
             } catch (Exception e) {
                 mConnectionState.setConnectionError(ConnectionError.START_CLIENT_ERROR);
                 return;
@@ -251,25 +315,42 @@ class CometClient extends BaseClient {
                 return;
             }
 
-            // Set the VM-wide authentication handler (needed by image fetcher and other using
-            // the standard java http API)
-            Authenticator.setDefault(new Authenticator() {
-                @Override
-                public PasswordAuthentication getPasswordAuthentication() {
-                    return new PasswordAuthentication(username, password.toCharArray());
-                }
-            });
+            // Credentials are sent with each request to the server, by us and by the image fetcher
+            if (isSqueezeNetwork) {
+                sharedHttpClient.setCredentials(serverAddress.host(), serverAddress.port(), null, null);
+            } else {
+                sharedHttpClient.setCredentials(serverAddress.host(), serverAddress.port(), username, password);
+            }
 
-            ClientTransport clientTransport = new HttpStreamingTransport(url, null, httpClient) {
+            HttpStreamingTransport clientTransport = new HttpStreamingTransport(url, null, httpClient) {
                 @Override
                 protected void customize(org.eclipse.jetty.client.api.Request request) {
-                    if (!isSqueezeNetwork && username != null && password != null) {
-                        String authorization = B64Code.encode(username + ":" + password);
-                        request.header(HttpHeader.AUTHORIZATION, "Basic " + authorization);
-                    }
+                    sharedHttpClient.authorize(request);
                 }
             };
+            clientTransport.setContentListener((message, size) -> {
+                String channel = message.getChannel();
+                if (channel != null && channel.contains(PLAYER_STATUS_CHANNEL_PART)) {
+                    mSubscriptionPolicy.onStatusMessage(channel.substring(channel.lastIndexOf('/') + 1), size);
+                }
+            });
             mBayeuxClient = new SqueezerBayeuxClient(url, clientTransport);
+            mBayeuxClient.setSessionListener(new SqueezerBayeuxClient.SessionListener() {
+                @Override
+                public void onConnectionLost(Throwable failure) {
+                    mBackgroundHandler.obtainMessage(MSG_CONNECTION_LOST, failure).sendToTarget();
+                }
+
+                @Override
+                public void onResumed() {
+                    mBackgroundHandler.sendEmptyMessage(MSG_RESUMED);
+                }
+
+                @Override
+                public void onResumeFailed(boolean rejected) {
+                    mBackgroundHandler.obtainMessage(MSG_RESUME_FAILED, rejected).sendToTarget();
+                }
+            });
             mBayeuxClient.addExtension(new SqueezerBayeuxExtension());
             mBayeuxClient.getChannel(Channel.META_HANDSHAKE).addListener((ClientSessionChannel.MessageListener) (channel, message) -> {
                 if (message.isSuccessful()) {
@@ -298,13 +379,31 @@ class CometClient extends BaseClient {
         });
     }
 
+    private void logEventStats() {
+        Log.i(TAG, "Player state events: " + mPlayerStateChanges.getStats());
+        Log.i(TAG, "Player volume events: " + mPlayerVolumeChanges.getStats());
+        Log.i(TAG, "Player status: " + mSubscriptionPolicy.getStats(SystemClock.elapsedRealtime()));
+    }
+
     private boolean needRegister() {
         return mBayeuxClient.getId().startsWith("1X");
     }
 
     private void onConnected(boolean isSqueezeNetwork) {
         Log.i(TAG, "Connected, start learning server capabilities");
-        mCurrentCommand = false;
+        // Publishes in flight on a previous connection will not be answered
+        Log.i(TAG, "Publish window: " + mPublishWindow.getStats());
+        Log.i(TAG, "Browse cache: " + mBrowseCache.getStats());
+        logEventStats();
+        mSubscriptionPolicy.resetStats(SystemClock.elapsedRealtime());
+        // Don't use the browse cache until we know the state of the library
+        mBrowseCache.setLibraryState(null, false);
+        mBackgroundHandler.removeMessages(MSG_PUBLISH_TIMEOUT);
+        mBackgroundHandler.removeMessages(MSG_PUBLISH_FLUSH);
+        mBackgroundHandler.removeMessages(MSG_RESUME);
+        mConnectionLostTime = 0;
+        mPublishWindow.reset();
+        mBackgroundHandler.sendMessageAtFrontOfQueue(mBackgroundHandler.obtainMessage(MSG_PUBLISH_FAIL_BATCH));
         mConnectionState.setConnectionState(ConnectionState.CONNECTION_COMPLETED);
         // If this is a rehandshake we may already have players.
         boolean rehandshake = !mConnectionState.getPlayers().isEmpty();
@@ -339,11 +438,34 @@ class CometClient extends BaseClient {
 
         if (rehandshake) {
             // Make sure we reorder subscriptions on rehandshake
-            mConnectionState.getPlayers().values().stream().forEach(player -> player.getPlayerState().setSubscriptionType(PlayerState.PlayerSubscriptionType.NOTIFY_NONE));
+            mConnectionState.getPlayers().values().stream().forEach(player -> player.updatePlayerState(playerState -> {
+                playerState.setSubscriptionType(PlayerState.PlayerSubscriptionType.NOTIFY_NONE);
+                return 0;
+            }));
             mConnectionState.setServerVersion(null);
         }
     }
 
+    /**
+     * Called when the session continues on a new connection. The server kept the subscriptions,
+     * so instead of starting over as after a new handshake, we only ask for the server status and
+     * the status of the players it pushes, in one batch, and let the parsers pick out what changed
+     * while the connection was lost.
+     */
+    private void onResumed() {
+        Log.i(TAG, "Session resumed after " + (SystemClock.elapsedRealtime() - mConnectionLostTime) + "ms");
+        mConnectionLostTime = 0;
+
+        String clientId = mBayeuxClient.getId();
+        publishMessage(serverStatusRequest(), CHANNEL_SLIM_REQUEST, String.format(CHANNEL_SERVER_STATUS_FORMAT, clientId), null);
+        for (String playerId : mSubscriptionPolicy.getPlayerIds(SubscriptionPolicy.Tier.PUSH)) {
+            Player player = mConnectionState.getPlayer(playerId);
+            if (player != null) {
+                requestPlayerStatus(player);
+            }
+        }
+    }
+
     private void parseRequestResponse(ClientSessionChannel channel, Message message) {
         Request request = mPendingRequests.get(message.getChannel());
         if (request != null) {
@@ -360,9 +482,11 @@ class CometClient extends BaseClient {
         boolean firstTimePlayersReceived = (getConnectionState().getServerVersion() == null);
 
         getConnectionState().setMediaDirs(Util.getStringArray(data, ConnectionState.MEDIA_DIRS));
+        mBrowseCache.setLibraryState(Util.getString(data, "lastscan"), Util.getInt(data, "rescan") == 1);
         getConnectionState().setServerVersion((String) data.get("version"));
         Object[] item_data = (Object[]) data.get("players_loop");
         final HashMap<String, Player> players = new HashMap<>();
+        final List<Map<String, Object>> playerRecords = new ArrayList<>();
         if (item_data != null) {
             for (Object item_d : item_data) {
                 Map<String, Object> record = (Map<String, Object>) item_d;
@@ -372,18 +496,26 @@ class CometClient extends BaseClient {
                 }
                 Player player = new Player(record);
                 players.put(player.getId(), player);
+                playerRecords.add(record);
             }
         }
+        mPlayerRecords = playerRecords;
+        scheduleSnapshot();
 
         Map<String, Player> currentPlayers = mConnectionState.getPlayers();
         if (firstTimePlayersReceived || !players.equals(currentPlayers)) {
+            mRestoredPlayers.clear();
             mConnectionState.setPlayers(players);
         } else {
             for (Player player : players.values()) {
-                PlayerState currentPlayerState = currentPlayers.get(player.getId()).getPlayerState();
-                if (!player.getPlayerState().prefs.equals(currentPlayerState.prefs)) {
-                    currentPlayerState.prefs = player.getPlayerState().prefs;
-                    postPlayerStateChanged(player);
+                Player currentPlayer = currentPlayers.get(player.getId());
+                Map<Player.Pref, String> prefs = player.getPlayerState().getPrefs();
+                if (!prefs.equals(currentPlayer.getPlayerState().getPrefs())) {
+                    currentPlayer.updatePlayerState(playerState -> {
+                        playerState.setPrefs(prefs);
+                        return PlayerStateChanged.PREFS;
+                    });
+                    postPlayerStateChanged(currentPlayer, currentPlayer.getPlayerState(), PlayerStateChanged.PREFS);
                 }
             }
         }
@@ -404,7 +536,15 @@ class CometClient extends BaseClient {
             return;
 
         Map<String, Object> messageData = message.getDataAsMap();
+        mRestoredPlayers.remove(playerId);
+        updatePlayerStatus(player, messageData);
+        mPlayerStatus.put(playerId, messageData);
+        if (player.equals(mConnectionState.getActivePlayer())) {
+            scheduleSnapshot();
+        }
+    }
 
+    private void updatePlayerStatus(Player player, Map<String, Object> messageData) {
         CurrentPlaylistItem currentSong = null;
         Object[] item_data = (Object[]) messageData.get("item_loop");
         if (item_data != null && item_data.length > 0) {
@@ -421,16 +561,23 @@ class CometClient extends BaseClient {
     @Override
     protected void postSongTimeChanged(Player player) {
         super.postSongTimeChanged(player);
-        if (player.getPlayerState().isPlaying()) {
+        scheduleSongTimeUpdate(player, player.getPlayerState());
+    }
+
+    private void scheduleSongTimeUpdate(Player player, PlayerState playerState) {
+        if (playerState.isPlaying() && !mRestoredPlayers.contains(player.getId())) {
             mBackgroundHandler.removeMessages(MSG_TIME_UPDATE);
             mBackgroundHandler.sendEmptyMessageDelayed(MSG_TIME_UPDATE, 1000);
         }
     }
 
     @Override
-    protected void postPlayerStateChanged(Player player) {
-        super.postPlayerStateChanged(player);
-        if (player.getPlayerState().getSleepDuration() > 0) {
+    protected void postPlayerStateChanged(Player player, PlayerState playerState, int changes) {
+        super.postPlayerStateChanged(player, playerState, changes);
+        if ((changes & (PlayerStateChanged.SONG_TIME | PlayerStateChanged.PLAY_STATUS)) != 0) {
+            scheduleSongTimeUpdate(player, playerState);
+        }
+        if (playerState.getSleepDuration() > 0 && !mRestoredPlayers.contains(player.getId())) {
             android.os.Message message = mBackgroundHandler.obtainMessage(MSG_STATE_UPDATE, player);
             mBackgroundHandler.removeMessages(MSG_STATE_UPDATE);
             mBackgroundHandler.sendMessageDelayed(message, 1000);
@@ -501,11 +648,14 @@ class CometClient extends BaseClient {
                     Log.w(TAG, channel + ": " + message.getJSON(), exception);
                 }
             }
-            mBackgroundHandler.sendEmptyMessage(MSG_PUBLISH_RESPONSE_RECIEVED);
         }
     }
 
     private abstract class ItemListener<T> extends BaseListHandler<T> implements ResponseHandler {
+        ItemListener(Class<T> dataType) {
+            super(dataType);
+        }
+
         void parseMessage(String countName, String itemLoopName, Message message) {
             @SuppressWarnings("unchecked")
             BrowseRequest<T> browseRequest = (BrowseRequest<T>) mPendingBrowseRequests.get(message.getChannel());
@@ -514,8 +664,14 @@ class CometClient extends BaseClient {
             }
 
             mPendingBrowseRequests.remove(message.getChannel());
-            clear();
+            // Cached pages are parsed on the handler thread and replies on the transport thread, so
+            // the items are collected here rather than in the list of the handler.
+            List<T> items = new ArrayList<>();
             Map<String, Object> data = message.getDataAsMap();
+            final boolean cachePage = (browseRequest.getCacheKey() != null && browseRequest.getSentTime() > 0 && !data.containsKey("networkerror"));
+            if (!cachePage && browseRequest.getSentTime() > 0) {
+                browseRequest.startPage(null);
+            }
             int count = Util.getInt(data.get(countName));
             Map<String, Object> baseRecord = (Map<String, Object>) data.get("base");
             if (baseRecord != null) {
@@ -527,25 +683,43 @@ class CometClient extends BaseClient {
                     Map<String, Object> record = (Map<String, Object>) item_d;
                     patchUrlPrefix(record);
                     if (baseRecord != null) record.put("base", baseRecord);
-                    add(record);
+                    items.add(create(record));
                     record.remove("base");
+                    if (cachePage) browseRequest.addPageRecord(record);
                 }
             }
 
             // Process the lists for all the registered handlers
             final boolean fullList = browseRequest.isFullList();
             final int start = browseRequest.getStart();
-            final int end = start + getItems().size();
+            final int end = start + items.size();
+            if (browseRequest.getSentTime() > 0) {
+                mChunkSizer.onResponse(items.size(), SystemClock.uptimeMillis() - browseRequest.getSentTime());
+            }
             int max = 0;
             patchUrlPrefix(data);
-            browseRequest.getCallback().onItemsReceived(count, start, data, getItems(), getDataType());
+            if (cachePage && (end % mPageSize == 0 || end >= count)) {
+                // The page is complete, cache it as if it was received in one response
+                Map<String, Object> page = new HashMap<>(data);
+                page.put(itemLoopName, browseRequest.getPageRecords().toArray());
+                mBackgroundHandler.obtainMessage(MSG_BROWSE_CACHE_PUT, new CachedPage(browseRequest.getCacheKey(), page)).sendToTarget();
+                browseRequest.startPage(null);
+            }
+            browseRequest.getCallback().onItemsReceived(count, start, data, items, getDataType());
             if (count > max) {
                 max = count;
             }
 
             // Check if we need to order more items
             if ((fullList || end % mPageSize != 0) && end < max) {
-                int itemsPerResponse = (end + mPageSize > max ? max - end : fullList ? mPageSize : mPageSize - browseRequest.getItemsPerResponse());
+                int itemsPerResponse;
+                if (fullList) {
+                    itemsPerResponse = (end + mPageSize > max ? max - end : mPageSize);
+                } else {
+                    // The rest of the page, in chunks
+                    int pageEnd = Math.min(max, (end / mPageSize + 1) * mPageSize);
+                    itemsPerResponse = Math.min(pageEnd - end, mChunkSizer.nextChunk(items.size()));
+                }
                 //XXX support prefix
                 internalRequestItems(browseRequest.update(end, itemsPerResponse));
             }
@@ -557,6 +731,10 @@ class CometClient extends BaseClient {
     }
 
     private class AlarmsListener extends ItemListener<Alarm> {
+        AlarmsListener() {
+            super(Alarm.class);
+        }
+
         @Override
         public void onResponse(Player player, Request request, Message message) {
             parseMessage("alarms_loop", message);
@@ -564,6 +742,10 @@ class CometClient extends BaseClient {
     }
 
     private class AlarmPlaylistsListener extends ItemListener<AlarmPlaylist> {
+        AlarmPlaylistsListener() {
+            super(AlarmPlaylist.class);
+        }
+
         @Override
         public void onResponse(Player player, Request request, Message message) {
             parseMessage("item_loop", message);
@@ -571,6 +753,10 @@ class CometClient extends BaseClient {
     }
 
     private class SongListener extends ItemListener<Song> {
+        SongListener() {
+            super(Song.class);
+        }
+
         @Override
         public void onResponse(Player player, Request request, Message message) {
             switch (request.getRequest()) {
@@ -589,6 +775,10 @@ class CometClient extends BaseClient {
     }
 
     private class MusicFolderListener extends ItemListener<MusicFolderItem> {
+        MusicFolderListener() {
+            super(MusicFolderItem.class);
+        }
+
         @Override
         public void onResponse(Player player, Request request, Message message) {
             parseMessage("folder_loop", message);
@@ -596,6 +786,10 @@ class CometClient extends BaseClient {
     }
 
     private class JiveItemListener extends ItemListener<JiveItem> {
+        JiveItemListener() {
+            super(JiveItem.class);
+        }
+
         @Override
         public void onResponse(Player player, Request request, Message message) {
             parseMessage("item_loop", message);
@@ -607,6 +801,82 @@ class CometClient extends BaseClient {
         mBackgroundHandler.removeMessages(MSG_HANDSHAKE_TIMEOUT);
     }
 
+    @Subscribe
+    public void onEvent(@SuppressWarnings("unused") HomeMenuEvent event) {
+        scheduleSnapshot();
+    }
+
+    @Subscribe
+    public void onEvent(@SuppressWarnings("unused") ActivePlayerChanged event) {
+        scheduleSnapshot();
+    }
+
+    /** Save the snapshot of the state when changes have settled. */
+    private void scheduleSnapshot() {
+        if (!mBackgroundHandler.hasMessages(MSG_SAVE_SNAPSHOT)) {
+            mBackgroundHandler.sendEmptyMessageDelayed(MSG_SAVE_SNAPSHOT, SNAPSHOT_DELAY);
+        }
+    }
+
+    private void saveSnapshot() {
+        String server = mServer;
+        // Only save what the server has told us in this connection
+        if (server == null || !mConnectionState.isConnected() || mConnectionState.getServerVersion() == null) {
+            return;
+        }
+
+        Map<String, Map<String, Object>> playerStatus = new HashMap<>(mPlayerStatus);
+        playerStatus.keySet().retainAll(mConnectionState.getPlayers().keySet());
+        Player activePlayer = mConnectionState.getActivePlayer();
+        StateSnapshot snapshot = new StateSnapshot(server, activePlayer != null ? activePlayer.getId() : null,
+                mPlayerRecords, playerStatus, mConnectionState.getHomeMenuHandling().getServerMenu());
+        snapshot.save(StateSnapshot.getFile(mSnapshotDirectory, server));
+    }
+
+    @Override
+    public void restoreSnapshot(Consumer<List<JiveItem>> homeMenuListener) {
+        mBackgroundHandler.post(() -> {
+            if (mConnectionState.isConnected() || mConnectionState.isConnectInProgress() || !mConnectionState.getPlayers().isEmpty()) {
+                return;
+            }
+            String server = Squeezer.getPreferences().getServerAddress().address();
+            StateSnapshot snapshot = StateSnapshot.load(StateSnapshot.getFile(mSnapshotDirectory, server), server);
+            if (snapshot == null) {
+                return;
+            }
+            Log.i(TAG, "Restore snapshot of " + server + ": " + snapshot.players.size() + " players, "
+                    + snapshot.homeMenu.size() + " menu items");
+
+            mUrlPrefix = "http://" + server;
+            Map<String, Player> players = new HashMap<>();
+            for (Map<String, Object> record : snapshot.players) {
+                Player player = new Player(record);
+                players.put(player.getId(), player);
+            }
+            // The active player first, so it is known when the players are shown
+            Player activePlayer = (snapshot.activePlayerId != null ? players.get(snapshot.activePlayerId) : null);
+            if (activePlayer != null) {
+                mConnectionState.setActivePlayer(activePlayer);
+            }
+            mConnectionState.setPlayers(players);
+            mRestoredPlayers.addAll(players.keySet());
+            for (Map.Entry<String, Map<String, Object>> entry : snapshot.playerStatus.entrySet()) {
+                Player player = players.get(entry.getKey());
+                if (player != null) {
+                    updatePlayerStatus(player, entry.getValue());
+                }
+            }
+
+            List<JiveItem> homeMenu = new ArrayList<>(snapshot.homeMenu.size());
+            for (Map<String, Object> record : snapshot.homeMenu) {
+                homeMenu.add(new JiveItem(record));
+            }
+            if (!homeMenu.isEmpty()) {
+                homeMenuListener.accept(homeMenu);
+            }
+        });
+    }
+
     @Override
     public void disconnect(boolean fromUser) {
         disconnect(fromUser ? ConnectionState.MANUAL_DISCONNECT : ConnectionState.DISCONNECTED);
@@ -632,6 +902,18 @@ class CometClient extends BaseClient {
         }
     }
 
+    @Override
+    public void cancelClientRequest(Object client, int start) {
+        for (Map.Entry<String, BrowseRequest<?>> entry : mPendingBrowseRequests.entrySet()) {
+            BrowseRequest<?> browseRequest = entry.getValue();
+            if (browseRequest.getCallback().getClient() == client && !browseRequest.isFullList()
+                    && browseRequest.getStart() >= start && browseRequest.getStart() < start + mPageSize) {
+                Log.d(TAG, "Cancel: " + browseRequest.cmd + " " + start);
+                mPendingBrowseRequests.remove(entry.getKey());
+            }
+        }
+    }
+
     private void exec(ResponseHandler callback, String... cmd) {
         exec(request(callback, cmd));
     }
@@ -658,32 +940,167 @@ class CometClient extends BaseClient {
 
     /** This may only be called from the handler thread */
     private void _publishMessage(Request request, String channel, String responseChannel, PublishListener publishListener) {
-        if (!mCurrentCommand) {
-            mCurrentCommand = true;
-            Map<String, Object> data = new HashMap<>();
-            if (request != null) {
-                data.put("request", request.slimRequest());
-                data.put("response", responseChannel);
-            } else {
-                data.put("unsubscribe", responseChannel);
+        PublishMessage publishMessage = new PublishMessage(request, channel, responseChannel, publishListener);
+        mPublishWindow.offer(publishMessage, publishMessage.isOrdered(), SystemClock.elapsedRealtime());
+        sendPublishMessages();
+    }
+
+    /**
+     * Send queued messages as long as the publish window allows it. This may only be called from
+     * the handler thread.
+     * <p>
+     * Messages are collected for {@link #PUBLISH_BATCH_TICK} milliseconds, or until
+     * {@link #PUBLISH_BATCH_SIZE} messages are ready, and then sent to the server in one HTTP
+     * request. Responses to the messages are matched to the requests via their response channels.
+     */
+    private void sendPublishMessages() {
+        PublishMessage publishMessage;
+        while ((publishMessage = mPublishWindow.poll(SystemClock.elapsedRealtime())) != null) {
+            mPublishBatch.add(publishMessage);
+            // Ordered messages can't share a batch with later messages, so don't wait for more
+            if (publishMessage.isOrdered() || mPublishBatch.size() >= PUBLISH_BATCH_SIZE) {
+                flushPublishBatch();
+            }
+        }
+        if (!mPublishBatch.isEmpty() && !mBackgroundHandler.hasMessages(MSG_PUBLISH_FLUSH)) {
+            mBackgroundHandler.sendEmptyMessageDelayed(MSG_PUBLISH_FLUSH, PUBLISH_BATCH_TICK);
+        }
+    }
+
+    private void flushPublishBatch() {
+        mBackgroundHandler.removeMessages(MSG_PUBLISH_FLUSH);
+        if (mPublishBatch.isEmpty()) {
+            return;
+        }
+
+        final List<PublishMessage> batch = new ArrayList<>(mPublishBatch);
+        mPublishBatch.clear();
+        mBayeuxClient.batch(() -> {
+            for (PublishMessage publishMessage : batch) {
+                sendPublishMessage(publishMessage);
             }
-            mBayeuxClient.getChannel(channel).publish(data, publishListener != null ? publishListener : this.mPublishListener);
-        } else
-            mCommandQueue.add(new PublishMessage(request, channel, responseChannel, publishListener));
+        });
+    }
+
+    /**
+     * Fail the publishes collected for the next batch. They were taken from the publish window,
+     * so like the publishes in flight they belong to the previous connection, and their response
+     * channels are for the previous client id. The requests waiting for those response channels
+     * are dropped, except browse requests, which are sent again under the current client id so the
+     * pages they fetch are not left waiting. This may only be called from the handler thread.
+     */
+    private void failPublishBatch() {
+        // Browse requests sent again are collected in a new batch
+        List<PublishMessage> batch = new ArrayList<>(mPublishBatch);
+        mPublishBatch.clear();
+        for (PublishMessage publishMessage : batch) {
+            HashMapMessage message = new HashMapMessage();
+            message.setChannel(publishMessage.channel);
+            message.setSuccessful(false);
+            message.put(Message.ERROR_FIELD, "Not sent before the connection was re-established");
+            PublishListener publishListener = (publishMessage.publishListener != null ? publishMessage.publishListener : mPublishListener);
+            publishListener.onMessage(mBayeuxClient.getChannel(publishMessage.channel), message);
+
+            if (publishMessage.request != null) {
+                mPendingRequests.remove(publishMessage.responseChannel);
+                BrowseRequest<?> browseRequest = mPendingBrowseRequests.remove(publishMessage.responseChannel);
+                if (browseRequest != null) {
+                    Log.d(TAG, "Send again: " + browseRequest.cmd + " " + browseRequest.getStart());
+                    sendBrowseRequest(browseRequest);
+                }
+            }
+        }
+    }
+
+    private void sendPublishMessage(final PublishMessage publishMessage) {
+        Map<String, Object> data = new HashMap<>();
+        if (publishMessage.request != null) {
+            data.put("request", publishMessage.request.slimRequest());
+            data.put("response", publishMessage.responseChannel);
+        } else {
+            data.put("unsubscribe", publishMessage.responseChannel);
+        }
+        final PublishListener publishListener = (publishMessage.publishListener != null ? publishMessage.publishListener : mPublishListener);
+        mBackgroundHandler.sendMessageDelayed(mBackgroundHandler.obtainMessage(MSG_PUBLISH_TIMEOUT, publishMessage), PUBLISH_TIMEOUT);
+        mBayeuxClient.getChannel(publishMessage.channel).publish(data, (channel, message) -> {
+            publishListener.onMessage(channel, message);
+            mBackgroundHandler.obtainMessage(MSG_PUBLISH_RESPONSE_RECIEVED, publishMessage).sendToTarget();
+        });
     }
 
     @Override
     protected  <T> void internalRequestItems(final BrowseRequest<T> browseRequest) {
-        Class<?> callbackClass = Reflection.getGenericClass(browseRequest.getCallback().getClass(), IServiceItemListCallback.class, 0);
-        ItemListener listener = mItemRequestMap.get(callbackClass);
-        if (listener == null) {
-            throw new RuntimeException("No handler defined for '" + browseRequest.getCallback().getClass() + "'");
+        // Whole pages are cached, independent of the chunks they are fetched in. Requests for the
+        // rest of a page continue the page started by the request for its first chunk.
+        if (browseRequest.getStart() % mPageSize == 0) {
+            String cacheKey = mBrowseCache.getKey(mUrlPrefix, browseRequest.cmd, browseRequest.params,
+                    browseRequest.getStart(), mPageSize);
+            browseRequest.startPage(cacheKey);
+            if (cacheKey != null) {
+                // Look in the cache on the handler thread, to keep disk access off the main thread
+                mBackgroundHandler.obtainMessage(MSG_BROWSE_CACHED, browseRequest).sendToTarget();
+                return;
+            }
+        }
+        sendBrowseRequest(browseRequest);
+    }
+
+    private void sendBrowseRequest(BrowseRequest<?> browseRequest) {
+        Request request = browseRequest(browseRequest);
+        browseRequest.setSentTime(SystemClock.uptimeMillis());
+        mPendingBrowseRequests.put(exec(request), browseRequest);
+    }
+
+    /**
+     * Answer the supplied browse request from the cache if possible, otherwise send it to the
+     * server.
+     */
+    private void browseCached(BrowseRequest<?> browseRequest) {
+        String json = mBrowseCache.get(browseRequest.getCacheKey());
+        if (json == null) {
+            sendBrowseRequest(browseRequest);
+            return;
+        }
+
+        Request request = browseRequest(browseRequest);
+        HashMapMessage message = new HashMapMessage();
+        message.setChannel("/cache/" + mCorrelationId++);
+        message.setData(new JSON().fromJSON(json));
+        browseRequest.setSentTime(0);
+        mPendingBrowseRequests.put(message.getChannel(), browseRequest);
+        request.callback.onResponse(browseRequest.getPlayer(), request, message);
+    }
+
+    /** A complete page of a browse response, to be stored in the cache */
+    private static class CachedPage {
+        final String key;
+        final Map<String, Object> data;
+
+        CachedPage(String key, Map<String, Object> data) {
+            this.key = key;
+            this.data = data;
         }
+    }
 
-        Request request = request(browseRequest.getPlayer(), listener, browseRequest.cmd())
+    private Request browseRequest(BrowseRequest<?> browseRequest) {
+        ItemListener<?> listener = getItemListener(browseRequest.getCallback().getClass());
+        return request(browseRequest.getPlayer(), listener, browseRequest.cmd())
                 .page(browseRequest.getStart(), browseRequest.getItemsPerResponse())
                 .params(browseRequest.params);
-        mPendingBrowseRequests.put(exec(request), browseRequest);
+    }
+
+    /**
+     * @return The listener for responses for the supplied item list callback class. The generic type
+     * of the callback class is only resolved the first time a class is seen.
+     */
+    private ItemListener<?> getItemListener(Class<?> callbackClass) {
+        return mCallbackListeners.computeIfAbsent(callbackClass, clazz -> {
+            ItemListener<?> listener = mItemRequestMap.get(Reflection.getGenericClass(clazz, IServiceItemListCallback.class, 0));
+            if (listener == null) {
+                throw new RuntimeException("No handler defined for '" + clazz + "'");
+            }
+            return listener;
+        });
     }
 
     @Override
@@ -706,12 +1123,35 @@ class CometClient extends BaseClient {
             public void onMessage(ClientSessionChannel channel, Message message) {
                 super.onMessage(channel, message);
                 if (message.isSuccessful()) {
-                    player.getPlayerState().setSubscriptionType(subscriptionType);
+                    player.updatePlayerState(playerState -> {
+                        playerState.setSubscriptionType(subscriptionType);
+                        return 0;
+                    });
                 }
             }
         });
     }
 
+    @Override
+    public SubscriptionPolicy getSubscriptionPolicy() {
+        return mSubscriptionPolicy;
+    }
+
+    @Override
+    public void setStatusTier(Player player, SubscriptionPolicy.Tier tier) {
+        SubscriptionPolicy.Tier previousTier = mSubscriptionPolicy.getTier(player.getId());
+        mSubscriptionPolicy.setTier(player.getId(), tier);
+        if (tier == SubscriptionPolicy.Tier.POLL) {
+            // Bring the player up to date now, rather than at the next poll
+            if (previousTier != SubscriptionPolicy.Tier.POLL) {
+                requestPlayerStatus(player);
+            }
+            if (!mBackgroundHandler.hasMessages(MSG_POLL_STATUS)) {
+                mBackgroundHandler.sendEmptyMessageDelayed(MSG_POLL_STATUS, SubscriptionPolicy.POLL_INTERVAL);
+            }
+        }
+    }
+
     @Override
     public void subscribeDisplayStatus(Player player, boolean subscribe) {
         Request request = request(player, "displaystatus").param("subscribe", subscribe ? "showbriefly" : "");
@@ -753,6 +1193,17 @@ class CometClient extends BaseClient {
     private static final int MSG_PUBLISH_RESPONSE_RECIEVED = 5;
     private static final int MSG_TIME_UPDATE = 6;
     private static final int MSG_STATE_UPDATE = 7;
+    private static final int MSG_PUBLISH_TIMEOUT = 8;
+    private static final int MSG_PUBLISH_FLUSH = 9;
+    private static final int MSG_BROWSE_CACHED = 10;
+    private static final int MSG_POLL_STATUS = 11;
+    private static final int MSG_CONNECTION_LOST = 12;
+    private static final int MSG_RESUME = 13;
+    private static final int MSG_RESUMED = 14;
+    private static final int MSG_RESUME_FAILED = 15;
+    private static final int MSG_SAVE_SNAPSHOT = 16;
+    private static final int MSG_BROWSE_CACHE_PUT = 17;
+    private static final int MSG_PUBLISH_FAIL_BATCH = 18;
     private class CliHandler extends Handler {
         CliHandler(Looper looper) {
             super(looper);
@@ -767,6 +1218,15 @@ class CometClient extends BaseClient {
                     break;
                 }
                 case MSG_DISCONNECT:
+                    Log.i(TAG, "Publish window: " + mPublishWindow.getStats());
+                    Log.i(TAG, "Browse cache: " + mBrowseCache.getStats());
+                    logEventStats();
+                    removeMessages(MSG_POLL_STATUS);
+                    removeMessages(MSG_RESUME);
+                    removeMessages(MSG_SAVE_SNAPSHOT);
+                    mConnectionLostTime = 0;
+                    mSubscriptionPolicy.clearTiers();
+                    mBrowseCache.flush();
                     mBayeuxClient.disconnect();
                     break;
                 case MSG_HANDSHAKE_TIMEOUT:
@@ -778,10 +1238,79 @@ class CometClient extends BaseClient {
                     mBayeuxClient.rehandshake();
                     break;
                 case MSG_PUBLISH_RESPONSE_RECIEVED: {
-                    mCurrentCommand = false;
-                    PublishMessage message = mCommandQueue.poll();
-                    if (message != null)
-                        _publishMessage(message.request, message.channel, message.responseChannel, message.publishListener);
+                    PublishMessage message = (PublishMessage) msg.obj;
+                    removeMessages(MSG_PUBLISH_TIMEOUT, message);
+                    mPublishWindow.complete(message, SystemClock.elapsedRealtime());
+                    sendPublishMessages();
+                    break;
+                }
+                case MSG_PUBLISH_TIMEOUT: {
+                    PublishMessage message = (PublishMessage) msg.obj;
+                    if (mPublishWindow.expire(message, SystemClock.elapsedRealtime())) {
+                        Log.w(TAG, "No publish response for " + message.channel + " " + message.responseChannel
+                                + " in " + PUBLISH_TIMEOUT + "ms, queued: " + mPublishWindow.getQueueDepth());
+                        sendPublishMessages();
+                    }
+                    break;
+                }
+                case MSG_PUBLISH_FLUSH:
+                    flushPublishBatch();
+                    break;
+                case MSG_PUBLISH_FAIL_BATCH:
+                    failPublishBatch();
+                    break;
+                case MSG_POLL_STATUS: {
+                    List<String> playerIds = mSubscriptionPolicy.getPlayerIds(SubscriptionPolicy.Tier.POLL);
+                    for (String playerId : playerIds) {
+                        Player player = mConnectionState.getPlayer(playerId);
+                        if (player != null) {
+                            requestPlayerStatus(player);
+                        }
+                    }
+                    if (!playerIds.isEmpty()) {
+                        sendEmptyMessageDelayed(MSG_POLL_STATUS, SubscriptionPolicy.POLL_INTERVAL);
+                    }
+                    break;
+                }
+                case MSG_CONNECTION_LOST:
+                    // Already resuming if the new connection is lost again
+                    if (mConnectionLostTime == 0) {
+                        Log.i(TAG, "Connection lost: " + msg.obj + ", resume session");
+                        mConnectionLostTime = SystemClock.elapsedRealtime();
+                        mBayeuxClient.resume();
+                    }
+                    break;
+                case MSG_RESUME:
+                    mBayeuxClient.resume();
+                    break;
+                case MSG_RESUMED:
+                    if (mConnectionLostTime != 0) {
+                        onResumed();
+                    }
+                    break;
+                case MSG_RESUME_FAILED: {
+                    boolean rejected = (boolean) msg.obj;
+                    if (mConnectionLostTime == 0) {
+                        break;
+                    }
+                    if (!rejected && SystemClock.elapsedRealtime() - mConnectionLostTime < RESUME_WINDOW) {
+                        sendEmptyMessageDelayed(MSG_RESUME, RESUME_RETRY_INTERVAL);
+                    } else {
+                        Log.i(TAG, "Could not resume session: initiate a new handshake");
+                        mConnectionLostTime = 0;
+                        mBayeuxClient.rehandshake();
+                    }
+                    break;
+                }
+                case MSG_SAVE_SNAPSHOT:
+                    saveSnapshot();
+                    break;
+                case MSG_BROWSE_CACHED:
+                    browseCached((BrowseRequest<?>) msg.obj);
+                    break;
+                case MSG_BROWSE_CACHE_PUT: {
+                    CachedPage page = (CachedPage) msg.obj;
+                    mBrowseCache.put(page.key, new JSON().toJSON(page.data));
                     break;
                 }
                 case MSG_TIME_UPDATE: {
@@ -793,7 +1322,7 @@ class CometClient extends BaseClient {
                 }
                 case MSG_STATE_UPDATE: {
                     Player player = (Player) msg.obj;
-                    postPlayerStateChanged(player);
+                    postPlayerStateChanged(player, player.getPlayerState(), PlayerStateChanged.SLEEP);
                     break;
                 }
             }
@@ -877,6 +1406,14 @@ class CometClient extends BaseClient {
             return TextUtils.join(" ", cmd);
         }
 
+        /**
+         * Paged requests (browse and status requests) only query the server, so they can be
+         * handled by the server in any order. Other requests may change the state of the server.
+         */
+        private boolean isQuery() {
+            return page != null;
+        }
+
         List<Object> slimRequest() {
             List<Object> slimRequest = new ArrayList<>();
 
@@ -924,5 +1461,10 @@ class CometClient extends BaseClient {
             this.responseChannel = responseChannel;
             this.publishListener = publishListener;
         }
+
+        /** Commands and (un)subscriptions must reach the server in the order they are issued. */
+        boolean isOrdered() {
+            return request == null || !CHANNEL_SLIM_REQUEST.equals(channel) || !request.isQuery();
+        }
     }
 }
@@ -0,0 +1,89 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+/**
+ * Events waiting to be delivered, merged so there is at most one pending event per key.
+ * <p>
+ * Events are added from any thread as they happen, and drained when they can be delivered, e.g.
+ * once per frame. Events which arrive for the same key in the meantime are merged into one, so
+ * subscribers handle one event per key per delivery instead of one for each change.
+ *
+ * @param <K> The type of the keys, e.g. a player id.
+ * @param <E> The type of the events.
+ */
+class EventCoalescer<K, E> {
+    /** Merges the pending event with a newer event for the same key */
+    private final BinaryOperator<E> mMerge;
+
+    private final Map<K, E> mPending = new LinkedHashMap<>();
+
+    private final Stats mStats = new Stats();
+
+    EventCoalescer(@NonNull BinaryOperator<E> merge) {
+        mMerge = merge;
+    }
+
+    /** Add an event to be delivered with the next {@link #drain()}. */
+    synchronized void add(@NonNull K key, @NonNull E event) {
+        mStats.posted++;
+        mPending.merge(key, event, mMerge);
+        mStats.maxPending = Math.max(mStats.maxPending, mPending.size());
+    }
+
+    /**
+     * @return The pending events, in the order their keys were first added, which the caller must
+     *     now deliver.
+     */
+    @NonNull
+    synchronized List<E> drain() {
+        List<E> events = new ArrayList<>(mPending.values());
+        mPending.clear();
+        if (!events.isEmpty()) {
+            mStats.deliveries++;
+            mStats.delivered += events.size();
+        }
+        return events;
+    }
+
+    synchronized Stats getStats() {
+        return new Stats(mStats);
+    }
+
+    static class Stats {
+        /** Number of events added */
+        int posted;
+        /** Number of events delivered, after merging */
+        int delivered;
+        /** Number of non empty drains */
+        int deliveries;
+        int maxPending;
+
+        private Stats() {
+        }
+
+        private Stats(Stats other) {
+            posted = other.posted;
+            delivered = other.delivered;
+            deliveries = other.deliveries;
+            maxPending = other.maxPending;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "posted=" + posted +
+                    ", delivered=" + delivered +
+                    ", deliveries=" + deliveries +
+                    ", maxPending=" + maxPending +
+                    '}';
+        }
+    }
+}
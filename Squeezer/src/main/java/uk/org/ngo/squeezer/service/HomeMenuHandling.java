@@ -5,6 +5,7 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,9 @@ public class HomeMenuHandling {
     public final List<JiveItem> homeMenu = new Vector<>();
     public CopyOnWriteArrayList<JiveItem> customShortcuts = new CopyOnWriteArrayList<>();
 
+    /** Records of the home menu items as last received from the server, see {@link StateSnapshot} */
+    private volatile List<Map<String, Object>> serverMenu = Collections.emptyList();
+
     public HomeMenuHandling(@NonNull EventBus eventBus) {
         mEventBus = eventBus;
     }
@@ -150,6 +154,14 @@ public class HomeMenuHandling {
     }
 
     public void setHomeMenu(List<JiveItem> items, List<String> archivedItems, Map<String, Map<String, Object>> customShortcuts) {
+        List<Map<String, Object>> records = new ArrayList<>(items.size());
+        for (JiveItem item : items) {
+            Map<String, Object> record = item.getRecord();
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        serverMenu = records;
         jiveMainNodes(items);
         homeMenu.clear();
         homeMenu.addAll(items);
@@ -158,6 +170,10 @@ public class HomeMenuHandling {
         mEventBus.postSticky(new HomeMenuEvent(homeMenu));
     }
 
+    List<Map<String, Object>> getServerMenu() {
+        return serverMenu;
+    }
+
     private void jiveMainNodes(List<JiveItem> homeMenu) {
         addNode(JiveItem.EXTRAS, homeMenu);
         addNode(JiveItem.SETTINGS, homeMenu);
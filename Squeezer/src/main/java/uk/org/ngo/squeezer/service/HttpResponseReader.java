@@ -0,0 +1,257 @@
+package uk.org.ngo.squeezer.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads HTTP responses from the socket of the Comet long-poll connection.
+ * <p>
+ * The status line, headers and chunk sizes are parsed directly from a reusable byte buffer,
+ * without creating strings. Content-Length and chunk sizes are byte counts. Only the content is
+ * decoded (as UTF-8), and it is handed to a {@link JsonStreamSplitter} as it arrives.
+ * <p>
+ * Apart from growing the line buffer for unusually long header lines, reading a response
+ * allocates nothing.
+ */
+class HttpResponseReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNKED = "chunked".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream mInputStream;
+
+    /** Bytes read from the socket. Always in read mode: unread bytes are position to limit. */
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Content bytes waiting to be decoded. This may hold the start of a UTF-8 sequence which
+     * continues in the next chunk. Always in write mode.
+     */
+    private final ByteBuffer mContent = ByteBuffer.allocate(BUFFER_SIZE + 4);
+
+    private final CharBuffer mChars = CharBuffer.allocate(BUFFER_SIZE);
+
+    private final CharsetDecoder mDecoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private byte[] mLine = new byte[256];
+    private int mLineLength;
+
+    private int mContentLength;
+    private boolean mChunked;
+
+    HttpResponseReader(InputStream inputStream) {
+        mInputStream = inputStream;
+        mBuffer.flip();
+    }
+
+    /**
+     * Read the status line, and the headers of the next response.
+     *
+     * @return The HTTP status code, or -1 if the status line is not understood.
+     */
+    int readResponseHead() throws IOException {
+        mContentLength = 0;
+        mChunked = false;
+        mContent.clear();
+        mDecoder.reset();
+
+        int status = parseStatus();
+        while (readLine() > 0) {
+            int colon = indexOf((byte) ':');
+            if (colon < 0) {
+                continue;
+            }
+            int valueStart = skipWhitespace(colon + 1);
+            if (nameEquals(CONTENT_LENGTH, colon)) {
+                mContentLength = (int) parseNumber(valueStart, 10);
+            } else if (nameEquals(TRANSFER_ENCODING, colon)) {
+                mChunked = regionEquals(CHUNKED, valueStart);
+            }
+        }
+        return status;
+    }
+
+    /** @return The size in bytes of the content of the current response, if not chunked. */
+    int getContentLength() {
+        return mContentLength;
+    }
+
+    boolean isChunked() {
+        return mChunked;
+    }
+
+    /**
+     * Read the size line of the next chunk.
+     *
+     * @return The size in bytes of the chunk. Zero means this is the last chunk.
+     */
+    int readChunkSize() throws IOException {
+        readLine();
+        return (int) parseNumber(0, 16);
+    }
+
+    /** Read the line ending after the data of a chunk. */
+    void readChunkEnd() throws IOException {
+        readLine();
+    }
+
+    /** Skip trailer headers after the last chunk. */
+    void readTrailers() throws IOException {
+        while (readLine() > 0) {
+        }
+    }
+
+    /**
+     * Read <code>length</code> bytes of content, and pass it to the supplied splitter as text.
+     */
+    void readContent(int length, JsonStreamSplitter splitter) throws IOException {
+        while (length > 0) {
+            if (!mBuffer.hasRemaining()) {
+                fill();
+            }
+            int count = Math.min(length, Math.min(mBuffer.remaining(), mContent.remaining()));
+            int limit = mBuffer.limit();
+            mBuffer.limit(mBuffer.position() + count);
+            mContent.put(mBuffer);
+            mBuffer.limit(limit);
+            length -= count;
+
+            decode(splitter);
+        }
+    }
+
+    private void decode(JsonStreamSplitter splitter) {
+        mContent.flip();
+        CoderResult result;
+        do {
+            result = mDecoder.decode(mContent, mChars, false);
+            mChars.flip();
+            splitter.append(mChars.array(), mChars.arrayOffset(), mChars.limit());
+            mChars.clear();
+        } while (result.isOverflow());
+        mContent.compact();
+    }
+
+    private int parseStatus() throws IOException {
+        readLine();
+        // HTTP/1.1 200 OK
+        int space = indexOf((byte) ' ');
+        if (space < 0 || mLineLength < space + 4) {
+            return -1;
+        }
+        int status = 0;
+        for (int i = space + 1; i < space + 4; i++) {
+            int digit = mLine[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            status = status * 10 + digit;
+        }
+        return status;
+    }
+
+    private long parseNumber(int start, int radix) throws IOException {
+        long value = 0;
+        int i = start;
+        for (; i < mLineLength; i++) {
+            int digit = Character.digit(mLine[i], radix);
+            if (digit < 0) {
+                break;
+            }
+            value = value * radix + digit;
+        }
+        if (i == start) {
+            throw new IOException("Expected a number at position " + start);
+        }
+        return value;
+    }
+
+    private int indexOf(byte b) {
+        for (int i = 0; i < mLineLength; i++) {
+            if (mLine[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < mLineLength && (mLine[i] == ' ' || mLine[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /** Compare the header name of the current line to the supplied lower case name. */
+    private boolean nameEquals(byte[] name, int length) {
+        return length == name.length && regionEquals(name, 0);
+    }
+
+    /** Compare the current line at <code>start</code> to the supplied lower case ASCII text. */
+    private boolean regionEquals(byte[] text, int start) {
+        if (mLineLength - start < text.length) {
+            return false;
+        }
+        for (int i = 0; i < text.length; i++) {
+            byte b = mLine[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the next line into {@link #mLine}, without the line terminator.
+     *
+     * @return The length of the line
+     */
+    private int readLine() throws IOException {
+        mLineLength = 0;
+        while (true) {
+            if (!mBuffer.hasRemaining()) {
+                fill();
+            }
+            byte b = mBuffer.get();
+            if (b == '\n') {
+                if (mLineLength > 0 && mLine[mLineLength - 1] == '\r') {
+                    mLineLength--;
+                }
+                return mLineLength;
+            }
+            if (mLineLength == mLine.length) {
+                byte[] line = new byte[mLine.length * 2];
+                System.arraycopy(mLine, 0, line, 0, mLineLength);
+                mLine = line;
+            }
+            mLine[mLineLength++] = b;
+        }
+    }
+
+    private void fill() throws IOException {
+        mBuffer.compact();
+        try {
+            int read = mInputStream.read(mBuffer.array(), mBuffer.arrayOffset() + mBuffer.position(), mBuffer.remaining());
+            if (read < 0) {
+                throw new EOFException();
+            }
+            mBuffer.position(mBuffer.position() + read);
+        } finally {
+            mBuffer.flip();
+        }
+    }
+}
@@ -27,16 +27,8 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.http.HttpStatus;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 
-import java.io.BufferedReader;
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
@@ -81,6 +73,7 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
 
     private final Delegate _delegate;
     private TransportListener _listener;
+    private volatile ContentListener _contentListener;
 
     private final HttpClient _httpClient;
     private final List<Request> _requests = new ArrayList<>();
@@ -105,6 +98,32 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         _listener = listener;
     }
 
+    /**
+     * Receives the size of the content which carried each message from the server, before the
+     * message is delivered.
+     */
+    public interface ContentListener {
+        /**
+         * @param size Size in characters of the message, or its share of the content if the
+         *     content carried several messages
+         */
+        void onContent(Message message, int size);
+    }
+
+    public void setContentListener(ContentListener listener) {
+        _contentListener = listener;
+    }
+
+    private void notifyContent(List<Message.Mutable> messages, String content) {
+        ContentListener listener = _contentListener;
+        if (listener != null && !messages.isEmpty()) {
+            int size = content.length() / messages.size();
+            for (Message message : messages) {
+                listener.onContent(message, size);
+            }
+        }
+    }
+
     @Override
     public boolean accept(String bayeuxVersion) {
         return true;
@@ -203,6 +222,17 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         if (!transportMessages.isEmpty()) transportSend(listener, transportMessages);
     }
 
+    /**
+     * Let the next connect message through, on a new streaming connection, to continue the
+     * session after the previous connection was lost.
+     */
+    public void prepareResume() {
+        if (_delegate.isConnected()) {
+            _delegate.disconnect("Disconnect to resume the session");
+        }
+        hasSendConnect = false;
+    }
+
     private void delegateSend(final TransportListener listener, final List<Message.Mutable> messages) {
         if (!_delegate.isConnected()) {
             try {
@@ -322,8 +352,14 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                     if (content != null && content.length() > 0) {
                         try {
                             List<Message.Mutable> responseMessages = parseMessages(content);
+                            notifyContent(responseMessages, content);
                             //Log.v(TAG, "Received messages " + messages);
+                            List<Message.Mutable> unanswered = new ArrayList<>(requestMessages);
                             for (Message.Mutable message : responseMessages) {
+                                if (message.getId() != null) {
+                                    removeRequest(unanswered, message.getId());
+                                }
+
                                 // LMS echoes the data field in the publish response for messages to the
                                 // slim/unsubscribe channel.
                                 // This causes the comet libraries to decide the message is not a publish response.
@@ -340,10 +376,14 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                                 } else {
                                     // LMS does not put ID on all replies. In this case we look for a request with the same
                                     // channel as this response, and use the id from that request.
+                                    // Batched requests may share a channel, but LMS replies in the
+                                    // order of the requests, so we use the first unanswered request.
                                     if (message.isPublishReply() && message.getId() == null) {
-                                        for (Message.Mutable requestMessage : requestMessages) {
+                                        for (Message.Mutable requestMessage : unanswered) {
                                             if (requestMessage.getChannel().equals(message.getChannel())) {
                                                 message.setId(requestMessage.getId());
+                                                unanswered.remove(requestMessage);
+                                                break;
                                             }
                                         }
                                     }
@@ -370,19 +410,30 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         });
     }
 
+    private static void removeRequest(List<Message.Mutable> requestMessages, String id) {
+        for (Message.Mutable requestMessage : requestMessages) {
+            if (id.equals(requestMessage.getId())) {
+                requestMessages.remove(requestMessage);
+                return;
+            }
+        }
+    }
+
     private static void sendText(OutputStream stream, String json, HttpFields customHeaders) throws IOException {
+        byte[] content = json.getBytes(StandardCharsets.UTF_8);
         StringBuilder msg = new StringBuilder("POST /cometd HTTP/1.1\r\n" +
                 HttpHeader.CONTENT_TYPE.asString() + ": text/json;charset=UTF-8\r\n" +
-                HttpHeader.CONTENT_LENGTH.asString() + ": " + json.length() + "\r\n");
+                HttpHeader.CONTENT_LENGTH.asString() + ": " + content.length + "\r\n");
 
         for (HttpField httpField : customHeaders) {
             if (httpField.getHeader() != HttpHeader.ACCEPT_ENCODING) {
                 msg.append(httpField.getName()).append(": ").append(httpField.getValue()).append("\r\n");
             }
         }
-        msg.append("\r\n").append(json);
-        //Log.v(TAG,"sendtext: " + msg);
+        msg.append("\r\n");
+        //Log.v(TAG,"sendtext: " + msg + json);
         stream.write(msg.toString().getBytes(StandardCharsets.UTF_8));
+        stream.write(content);
         stream.flush();
     }
 
@@ -417,6 +468,13 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
             }
         }
 
+        /** @return True if the supplied socket is the current connection, and is connected */
+        private boolean isConnected(Socket session) {
+            synchronized (this) {
+                return socket == session && session.isConnected();
+            }
+        }
+
         public void connect(String host, int port) throws IOException {
             Socket session = new Socket();
 
@@ -425,7 +483,7 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
             }
 
             session.connect(new InetSocketAddress(host, port), 4000); // TODO use proper timeout
-            new ListeningThread(this, session.getInputStream()).start();
+            new ListeningThread(this, session).start();
         }
 
         private void disconnect(String reason) {
@@ -563,6 +621,7 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
             try {
                 List<Message.Mutable> messages = parseMessages (data);
                 //Log.v(TAG,"Received messages " + data);
+                notifyContent(messages, data);
                 onMessages(messages);
             } catch (ParseException x) {
                 fail(x, "ParseException");
@@ -646,37 +705,30 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
 
     private static class ListeningThread extends Thread {
         private final Delegate delegate;
-        private final BufferedReader reader;
+        private final Socket session;
+        private final HttpResponseReader reader;
+        private final JsonStreamSplitter splitter = new JsonStreamSplitter();
 
-        public ListeningThread(Delegate delegate, InputStream inputStream) {
+        public ListeningThread(Delegate delegate, Socket session) throws IOException {
             this.delegate = delegate;
-            reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            this.session = session;
+            reader = new HttpResponseReader(session.getInputStream());
         }
 
         @Override
         public void run() {
-            while (delegate.isConnected()) {
+            // Stop when the socket is replaced, so a late error on a closed socket does not fail
+            // the connection which replaced it
+            while (delegate.isConnected(session)) {
                 try {
-                    int status = parseHttpStatus(readLine());
-
-                    boolean chunked = false;
-                    int contentSize = 0;
-                    String headerLine;
-                    while (!"".equals(headerLine = readLine())) {
-                        if ("Transfer-Encoding: chunked".equals(headerLine))
-                            chunked = true;
-                        int pos = headerLine.indexOf("Content-Length: ");
-                        if (pos == 0) {
-                            contentSize = Integer.parseInt(headerLine.substring("Content-Length: ".length()));
-                        }
-                    }
-
-                    if (!chunked) {
-                        String content = read(contentSize);
-                        if (content.length() > 0) {
-                            if (status == HttpStatus.OK_200) {
-                                delegate.onData(content);
-                            }
+                    int status = reader.readResponseHead();
+                    splitter.reset();
+
+                    if (!reader.isChunked()) {
+                        int contentSize = reader.getContentLength();
+                        if (contentSize > 0) {
+                            reader.readContent(contentSize, splitter);
+                            onContent(status);
                         } else {
                             Map<String, Object> failure = new HashMap<>(2);
                             // Convert the 200 into 204 (no content)
@@ -685,20 +737,16 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                             delegate.fail(x, "No content");
                         }
                     } else {
-                        String unprocessed = "";
-                        while (!"0".equals(readLine())) {
-                            String data = readLine();
-                            unprocessed += data;
-                            if (isValidJson(unprocessed)) {
-                                if (status == HttpStatus.OK_200) {
-                                    delegate.onData(unprocessed);
-                                }
-                                unprocessed = "";
-                            } else {
-                                Log.v(TAG, "JSON is not valid! Appending to next chunk: " + data);
+                        int chunkSize;
+                        while ((chunkSize = reader.readChunkSize()) > 0) {
+                            reader.readContent(chunkSize, splitter);
+                            reader.readChunkEnd();
+                            onContent(status);
+                            if (splitter.hasPartial()) {
+                                Log.v(TAG, "JSON is not complete, waiting for next chunk");
                             }
                         }
-                        readLine();//Read final/empty chunk
+                        reader.readTrailers();
                         delegate.disconnect("End of chunks");
                     }
 
@@ -709,60 +757,23 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                         delegate.fail(x, "Unexpected HTTP status code");
                     }
                 } catch (IOException e) {
-                    if (delegate.isConnected()) {
+                    if (delegate.isConnected(session)) {
                         delegate.fail(e, "IOException reading socket");
                     }
+                } catch (ParseException e) {
+                    delegate.fail(e, "ParseException");
                 }
             }
         }
 
-        private boolean isValidJson(String jsonStr) {
-            try {
-                JSONTokener tokenizer = new JSONTokener(jsonStr);
-                while (tokenizer.more()) {
-                    Object json = tokenizer.nextValue();
-                    if (!(json instanceof JSONObject || json instanceof JSONArray)) {
-                        return false;
-                    }
-                }
-                return true;
-            } catch (JSONException e) {
-                return false;
-            }
-        }
-
-        Pattern httpStatusLinePattern = Pattern.compile("HTTP/1.1 (\\d{3}) \\p{all}+");
-        private int parseHttpStatus(String statusLine) {
-            Matcher m = httpStatusLinePattern.matcher(statusLine);
-            try {
-                if (m.find()) {
-                    return Integer.parseInt(m.group(1));
+        /** Pass complete JSON values received so far to the delegate */
+        private void onContent(int status) throws ParseException {
+            String json;
+            while ((json = splitter.next()) != null) {
+                if (status == HttpStatus.OK_200) {
+                    delegate.onData(json);
                 }
-            } catch (NumberFormatException e) {
-            }
-            return -1;
-        }
-
-        private String readLine() throws IOException {
-            String inputLine = reader.readLine();
-            if (inputLine == null) {
-                throw new EOFException();
-            }
-            return inputLine;
-        }
-
-        private String read(int size) throws IOException {
-            char[] buffer = new char[size];
-            int length = 0, bytes;
-            while ((bytes = reader.read(buffer, length, size - length)) > 0) {
-                length += bytes;
-                if (length == size) break;
-                Log.v(TAG, "Partial read " + bytes + ", read so far " + length + ", still needs " + (size - length));
-            }
-            if (length != size) {
-                throw new EOFException("Expected " + size + " characters, but got " + length);
             }
-            return new String(buffer);
         }
     }
 
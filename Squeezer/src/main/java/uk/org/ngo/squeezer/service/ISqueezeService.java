@@ -142,9 +142,18 @@ public interface ISqueezeService {
      */
     boolean canAdjustVolumeForSyncGroup();
 
+    /**
+     * Tell whether the list of players is visible, so the status of all players must be followed,
+     * rather than just the active player and the players synced to it.
+     */
+    void setPlayerListVisible(boolean visible);
+
     /** Cancel any pending callbacks for client */
     void cancelItemListRequests(Object client);
 
+    /** Cancel the pending callbacks for client, for the page starting at start */
+    void cancelItemListRequest(Object client, int start);
+
     /** Alarm list */
     void alarms(int start, IServiceItemListCallback<Alarm> callback);
 
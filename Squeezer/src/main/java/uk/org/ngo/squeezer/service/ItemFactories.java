@@ -0,0 +1,60 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.model.Alarm;
+import uk.org.ngo.squeezer.model.AlarmPlaylist;
+import uk.org.ngo.squeezer.model.CurrentPlaylistItem;
+import uk.org.ngo.squeezer.model.JiveItem;
+import uk.org.ngo.squeezer.model.MusicFolderItem;
+import uk.org.ngo.squeezer.model.Player;
+import uk.org.ngo.squeezer.model.Song;
+
+/**
+ * Registry of factories which create model objects from records received from the server.
+ * <p>
+ * The factories are constructor references, so no reflection is needed to create the model
+ * objects, and R8 can see which constructors are used.
+ */
+class ItemFactories {
+    private static final Map<Class<?>, ItemFactory<?>> factories = new HashMap<>();
+
+    static {
+        register(Alarm.class, Alarm::new);
+        register(AlarmPlaylist.class, AlarmPlaylist::new);
+        register(CurrentPlaylistItem.class, CurrentPlaylistItem::new);
+        register(JiveItem.class, JiveItem::new);
+        register(MusicFolderItem.class, MusicFolderItem::new);
+        register(Player.class, Player::new);
+        register(Song.class, Song::new);
+    }
+
+    private ItemFactories() {
+    }
+
+    private static <T> void register(Class<T> dataType, ItemFactory<T> factory) {
+        factories.put(dataType, factory);
+    }
+
+    /**
+     * @return The factory for the supplied model class.
+     * @throws IllegalArgumentException If no factory is registered for the class.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    static <T> ItemFactory<T> get(Class<T> dataType) {
+        ItemFactory<T> factory = (ItemFactory<T>) factories.get(dataType);
+        if (factory == null) {
+            throw new IllegalArgumentException("No item factory for " + dataType.getName());
+        }
+        return factory;
+    }
+
+    /** Create a model object from a record received from the server. */
+    interface ItemFactory<T> {
+        T create(Map<String, Object> record);
+    }
+}
@@ -0,0 +1,113 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.Nullable;
+
+import java.text.ParseException;
+
+/**
+ * Splits a stream of JSON text into complete top level JSON values.
+ * <p>
+ * Text is supplied as it arrives from the network, and is scanned only once. The scanner keeps
+ * its state (nesting depth, inside string, escape) between calls to {@link #append(char[], int, int)},
+ * so a value split over many chunks is detected in linear time.
+ * <p>
+ * Only objects and arrays are allowed at the top level, which is all a Bayeux server sends.
+ */
+class JsonStreamSplitter {
+    private final StringBuilder mBuffer = new StringBuilder();
+
+    /** Position in {@link #mBuffer} of the next character to scan */
+    private int mScanned;
+
+    /** Start in {@link #mBuffer} of the current top level value, -1 if we are between values */
+    private int mStart = -1;
+
+    private int mDepth;
+    private boolean mInString;
+    private boolean mEscape;
+
+    void append(char[] chars, int offset, int length) {
+        mBuffer.append(chars, offset, length);
+    }
+
+    void append(CharSequence chars) {
+        mBuffer.append(chars);
+    }
+
+    /**
+     * @return The next complete top level JSON value, or null if more text is needed.
+     * @throws ParseException If text outside a value is not whitespace.
+     */
+    @Nullable
+    String next() throws ParseException {
+        int length = mBuffer.length();
+        while (mScanned < length) {
+            char c = mBuffer.charAt(mScanned++);
+            if (mInString) {
+                if (mEscape) {
+                    mEscape = false;
+                } else if (c == '\\') {
+                    mEscape = true;
+                } else if (c == '"') {
+                    mInString = false;
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"':
+                    mInString = true;
+                    break;
+                case '{':
+                case '[':
+                    if (mDepth++ == 0) {
+                        mStart = mScanned - 1;
+                    }
+                    break;
+                case '}':
+                case ']':
+                    if (mDepth == 0) {
+                        throw new ParseException("Unexpected '" + c + "'", mScanned - 1);
+                    }
+                    if (--mDepth == 0) {
+                        String value = mBuffer.substring(mStart, mScanned);
+                        consume();
+                        return value;
+                    }
+                    break;
+                default:
+                    if (mDepth == 0 && !Character.isWhitespace(c)) {
+                        throw new ParseException("Unexpected '" + c + "'", mScanned - 1);
+                    }
+            }
+        }
+
+        // Nothing but whitespace left, so drop it
+        if (mDepth == 0) {
+            consume();
+        }
+        return null;
+    }
+
+    /** @return true if text for an incomplete value is buffered. */
+    boolean hasPartial() {
+        return mDepth > 0;
+    }
+
+    /** Forget all buffered text, e.g. at the end of a HTTP response. */
+    void reset() {
+        mBuffer.setLength(0);
+        mScanned = 0;
+        mStart = -1;
+        mDepth = 0;
+        mInString = false;
+        mEscape = false;
+    }
+
+    /** Remove scanned text from the buffer. */
+    private void consume() {
+        mBuffer.delete(0, mScanned);
+        mScanned = 0;
+        mStart = -1;
+    }
+}
@@ -0,0 +1,209 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Bookkeeping for publishes to the server which are waiting for a publish response.
+ * <p>
+ * Up to <code>maxInFlight</code> publishes may be outstanding at the same time. Publishes which
+ * must be handled by the server in the order they are issued (commands and subscriptions) act as
+ * barriers: they are only sent when nothing else is outstanding, and nothing else is sent until
+ * they are answered.
+ * <p>
+ * Times are supplied by the caller, so this class has no dependency on the Android clock.
+ *
+ * @param <E> The type of the publishes.
+ */
+class PublishWindow<E> {
+    private final int mMaxInFlight;
+
+    private final Queue<Entry<E>> mQueue = new ArrayDeque<>();
+
+    private final Map<E, Entry<E>> mInFlight = new HashMap<>();
+
+    /** The ordered publish currently outstanding, if any. */
+    @Nullable
+    private E mBarrier;
+
+    private final Stats mStats = new Stats();
+
+    PublishWindow(int maxInFlight) {
+        mMaxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Queue a publish.
+     *
+     * @param publish The publish to queue
+     * @param ordered If true the publish must not overlap with any other publish
+     * @param now Current time in milliseconds
+     */
+    synchronized void offer(@NonNull E publish, boolean ordered, long now) {
+        mQueue.add(new Entry<>(publish, ordered, now));
+        mStats.queued++;
+        mStats.maxQueueDepth = Math.max(mStats.maxQueueDepth, mQueue.size());
+    }
+
+    /**
+     * @return The next publish to send, or null if there is nothing to send or the window is full.
+     * The returned publish is considered in flight until {@link #complete(Object, long)} or
+     * {@link #expire(Object, long)} is called for it.
+     */
+    @Nullable
+    synchronized E poll(long now) {
+        Entry<E> entry = mQueue.peek();
+        if (entry == null || mBarrier != null || mInFlight.size() >= mMaxInFlight) {
+            return null;
+        }
+        if (entry.ordered && !mInFlight.isEmpty()) {
+            return null;
+        }
+
+        mQueue.remove();
+        if (entry.ordered) {
+            mBarrier = entry.publish;
+        }
+        mStats.totalWaitTime += now - entry.time;
+        mStats.maxWaitTime = Math.max(mStats.maxWaitTime, now - entry.time);
+        entry.time = now;
+        mInFlight.put(entry.publish, entry);
+        mStats.sent++;
+        mStats.maxInFlight = Math.max(mStats.maxInFlight, mInFlight.size());
+        return entry.publish;
+    }
+
+    /**
+     * Register the publish response for the supplied publish.
+     *
+     * @return true if the publish was in flight
+     */
+    synchronized boolean complete(@NonNull E publish, long now) {
+        Entry<E> entry = remove(publish);
+        if (entry == null) {
+            return false;
+        }
+        mStats.completed++;
+        mStats.totalRoundTripTime += now - entry.time;
+        mStats.maxRoundTripTime = Math.max(mStats.maxRoundTripTime, now - entry.time);
+        return true;
+    }
+
+    /**
+     * The supplied publish did not get a response in time. Free its slot in the window.
+     *
+     * @return true if the publish was in flight
+     */
+    synchronized boolean expire(@NonNull E publish, long now) {
+        if (remove(publish) == null) {
+            return false;
+        }
+        mStats.timedOut++;
+        return true;
+    }
+
+    private Entry<E> remove(E publish) {
+        Entry<E> entry = mInFlight.remove(publish);
+        if (entry != null && mBarrier == publish) {
+            mBarrier = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Forget all publishes in flight, e.g. because the connection was re-established.
+     * Queued publishes are kept.
+     */
+    synchronized void reset() {
+        mInFlight.clear();
+        mBarrier = null;
+    }
+
+    synchronized int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    synchronized int getInFlight() {
+        return mInFlight.size();
+    }
+
+    /** @return A snapshot of the counters of this window. */
+    synchronized Stats getStats() {
+        return new Stats(mStats);
+    }
+
+    private static class Entry<E> {
+        private final E publish;
+        private final boolean ordered;
+        /** Time the publish was queued, and when it has been sent, the time it was sent */
+        private long time;
+
+        private Entry(E publish, boolean ordered, long time) {
+            this.publish = publish;
+            this.ordered = ordered;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Latency and throughput counters. All times are in milliseconds.
+     */
+    static class Stats {
+        int queued;
+        int sent;
+        int completed;
+        int timedOut;
+        int maxQueueDepth;
+        int maxInFlight;
+        long totalWaitTime;
+        long maxWaitTime;
+        long totalRoundTripTime;
+        long maxRoundTripTime;
+
+        private Stats() {
+        }
+
+        private Stats(Stats other) {
+            queued = other.queued;
+            sent = other.sent;
+            completed = other.completed;
+            timedOut = other.timedOut;
+            maxQueueDepth = other.maxQueueDepth;
+            maxInFlight = other.maxInFlight;
+            totalWaitTime = other.totalWaitTime;
+            maxWaitTime = other.maxWaitTime;
+            totalRoundTripTime = other.totalRoundTripTime;
+            maxRoundTripTime = other.maxRoundTripTime;
+        }
+
+        long averageWaitTime() {
+            return sent > 0 ? totalWaitTime / sent : 0;
+        }
+
+        long averageRoundTripTime() {
+            return completed > 0 ? totalRoundTripTime / completed : 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "queued=" + queued +
+                    ", sent=" + sent +
+                    ", completed=" + completed +
+                    ", timedOut=" + timedOut +
+                    ", maxQueueDepth=" + maxQueueDepth +
+                    ", maxInFlight=" + maxInFlight +
+                    ", averageWaitTime=" + averageWaitTime() +
+                    ", maxWaitTime=" + maxWaitTime +
+                    ", averageRoundTripTime=" + averageRoundTripTime() +
+                    ", maxRoundTripTime=" + maxRoundTripTime +
+                    '}';
+        }
+    }
+}
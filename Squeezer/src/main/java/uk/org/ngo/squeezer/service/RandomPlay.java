@@ -41,7 +41,10 @@ public class RandomPlay {
         this.firstFound = false;
         this.nextTrack = "";
         this.activeFolderID = "";
-        player.getPlayerState().setRandomPlaying(false);
+        player.updatePlayerState(playerState -> {
+            playerState.setRandomPlaying(false);
+            return 0;
+        });
     }
 
     String getNextTrack() {
@@ -119,7 +122,10 @@ public class RandomPlay {
                 // Generate playlist
                 rDelegate.fillPlaylist(new HashSet<>(rDelegate.getTracks(this.folderID)),
                         player, "no_ignore");
-                player.getPlayerState().setRandomPlaying(true);
+                player.updatePlayerState(playerState -> {
+                    playerState.setRandomPlaying(true);
+                    return 0;
+                });
             }
         }
 
@@ -16,9 +16,12 @@
 
 package uk.org.ngo.squeezer.service;
 
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
+import uk.org.ngo.squeezer.model.JiveItem;
 import uk.org.ngo.squeezer.model.Player;
 import uk.org.ngo.squeezer.model.PlayerState;
 
@@ -38,6 +41,15 @@ interface SlimClient {
     // XXX: Document
     void disconnect(boolean fromUser);
 
+    /**
+     * Show the players, their status and the home menu saved from the last connection to the
+     * server, until the connection is made and the server tells the current state. Does nothing
+     * if a connection is already started.
+     *
+     * @param homeMenuListener Receives the saved home menu
+     */
+    void restoreSnapshot(Consumer<List<JiveItem>> homeMenuListener);
+
     ConnectionState getConnectionState();
     String getUsername();
     String getPassword();
@@ -84,9 +96,24 @@ interface SlimClient {
      */
     void cancelClientRequests(Object client);
 
+    /**
+     * Notify that the specified client no longer wants the page starting at the specified position.
+     * @param client messages receiver
+     * @param start start of the page
+     */
+    void cancelClientRequest(Object client, int start);
+
     void requestPlayerStatus(Player player);
 
     void subscribePlayerStatus(Player newActivePlayer, PlayerState.PlayerSubscriptionType subscriptionType);
+
+    SubscriptionPolicy getSubscriptionPolicy();
+
+    /**
+     * Follow the status of the player as its tier says. Subscribing to status pushes is done
+     * separately, with {@link #subscribePlayerStatus(Player, PlayerState.PlayerSubscriptionType)}.
+     */
+    void setStatusTier(Player player, SubscriptionPolicy.Tier tier);
     void subscribeDisplayStatus(Player player, boolean subscribe);
     void subscribeMenuStatus(Player player, boolean subscribe);
 }
@@ -23,6 +23,7 @@ import androidx.annotation.NonNull;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.greenrobot.eventbus.EventBus;
 import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
@@ -47,6 +48,10 @@ public class SlimDelegate {
         mClient.disconnect(fromUser);
     }
 
+    void restoreSnapshot(Consumer<List<JiveItem>> homeMenuListener) {
+        mClient.restoreSnapshot(homeMenuListener);
+    }
+
     void cancelClientRequests(Object client) {
         mClient.cancelClientRequests(client);
     }
@@ -60,6 +65,14 @@ public class SlimDelegate {
         mClient.subscribePlayerStatus(player, subscriptionType);
     }
 
+    SubscriptionPolicy getSubscriptionPolicy() {
+        return mClient.getSubscriptionPolicy();
+    }
+
+    void setStatusTier(Player player, SubscriptionPolicy.Tier tier) {
+        mClient.setStatusTier(player, tier);
+    }
+
     void subscribeDisplayStatus(Player player, boolean subscribe) {
         mClient.subscribeDisplayStatus(player, subscribe);
     }
@@ -83,7 +83,7 @@ import uk.org.ngo.squeezer.model.Song;
 import uk.org.ngo.squeezer.service.event.ConnectionChanged;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
 import uk.org.ngo.squeezer.service.event.MusicChanged;
-import uk.org.ngo.squeezer.service.event.PlayStatusChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
 import uk.org.ngo.squeezer.service.event.PlayerVolume;
 import uk.org.ngo.squeezer.service.event.PlayersChanged;
 import uk.org.ngo.squeezer.util.ImageFetcher;
@@ -213,6 +213,9 @@ public class SqueezeService extends Service {
 
         mEventBus.register(this);  // Get events before other subscribers - now with Annotation
 
+        // Show the state from the last connection while we connect
+        mDelegate.restoreSnapshot(this::setHomeMenu);
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             registerReceiver(deviceIdleModeReceiver, new IntentFilter(
                     PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED));
@@ -317,12 +320,23 @@ public class SqueezeService extends Service {
      */
 
     @Subscribe(priority = 1)
-    public void onEvent(PlayStatusChanged event) {
-        if (event.player.equals(mDelegate.getActivePlayer())) {
-            int state = PlayerState.PLAY_STATE_PLAY.equals(event.playStatus) ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_STOPPED;
+    public void onEvent(PlayerStateChanged event) {
+        if (!event.player.equals(mDelegate.getActivePlayer())) {
+            return;
+        }
+        if (event.changed(PlayerStateChanged.SYNC)) {
+            // Players synced to the active player are followed as closely as the active player
+            updateAllPlayerSubscriptionStates();
+        }
+        if (event.changed(PlayerStateChanged.PLAY_STATUS)) {
+            String playStatus = event.playerState.getPlayStatus();
+            int state = PlayerState.PLAY_STATE_PLAY.equals(playStatus) ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_STOPPED;
             mMediaSession.setPlaybackState(new PlaybackStateCompat.Builder().setState(state, 0, 0).build());
             updateOngoingNotification();
-            if (PlayerState.PLAY_STATE_PLAY.equals(event.playStatus)) musicPaused = false;
+            if (PlayerState.PLAY_STATE_PLAY.equals(playStatus)) musicPaused = false;
+        }
+        if (event.changed(PlayerStateChanged.VOLUME)) {
+            mVolumeProvider.setCurrentVolume(mDelegate.getVolume(mGroupVolume).volume / mVolumeProvider.step);
         }
     }
 
@@ -361,14 +375,7 @@ public class SqueezeService extends Service {
         public void onItemsReceived(int count, int start, Map<String, Object> parameters, List<JiveItem> items, Class<JiveItem> dataType) {
             homeMenu.addAll(items);
             if (homeMenu.size() == count) {
-                Preferences preferences = Squeezer.getPreferences();
-                boolean useArchive = preferences.getCustomizeHomeMenuMode() != Preferences.CustomizeHomeMenuMode.DISABLED;
-                List<String> archivedMenuItems = Collections.emptyList();
-                if ((useArchive) && (mDelegate.getActivePlayer() != null)) {
-                    archivedMenuItems = preferences.getArchivedMenuItems(mDelegate.getActivePlayer());
-                }
-                Map<String, Map<String, Object>> customShortcuts = preferences.restoreCustomShortcuts();
-                mDelegate.setHomeMenu(homeMenu, archivedMenuItems, customShortcuts);
+                setHomeMenu(homeMenu);
             }
         }
 
@@ -379,6 +386,21 @@ public class SqueezeService extends Service {
     }
 
 
+    /**
+     * Set the home menu from the items received from the server, with the archived items and
+     * shortcuts of the user.
+     */
+    private void setHomeMenu(List<JiveItem> homeMenu) {
+        Preferences preferences = Squeezer.getPreferences();
+        boolean useArchive = preferences.getCustomizeHomeMenuMode() != Preferences.CustomizeHomeMenuMode.DISABLED;
+        List<String> archivedMenuItems = Collections.emptyList();
+        if ((useArchive) && (mDelegate.getActivePlayer() != null)) {
+            archivedMenuItems = preferences.getArchivedMenuItems(mDelegate.getActivePlayer());
+        }
+        Map<String, Map<String, Object>> customShortcuts = preferences.restoreCustomShortcuts();
+        mDelegate.setHomeMenu(homeMenu, archivedMenuItems, customShortcuts);
+    }
+
     private void requestPlayerData() {
         Player activePlayer = mDelegate.getActivePlayer();
 
@@ -394,39 +416,35 @@ public class SqueezeService extends Service {
     }
 
     /**
-     * Adjusts the subscription to players' status updates.
+     * Adjusts the subscription to players' status updates, to how frequently we need to know
+     * their status, see {@link SubscriptionPolicy}.
      */
     private void updateAllPlayerSubscriptionStates() {
-        for (Player player : mDelegate.getPlayers().values()) {
-            updatePlayerSubscription(player, calculateSubscriptionTypeFor(player));
+        SubscriptionPolicy policy = mDelegate.getSubscriptionPolicy();
+        Map<String, Player> players = mDelegate.getPlayers();
+        Player activePlayer = mDelegate.getActivePlayer();
+        policy.retainPlayers(players.keySet());
+        for (Player player : players.values()) {
+            updatePlayerSubscription(player, policy.tierFor(player, activePlayer));
         }
     }
 
-    /**
-     * Determine the correct status subscription type for the given player, based on
-     * how frequently we need to know its status.
-     */
-    private PlayerState.PlayerSubscriptionType calculateSubscriptionTypeFor(Player player) {
-        return PlayerState.PlayerSubscriptionType.NOTIFY_ON_CHANGE;
-    }
-
     /**
      * Manage subscription to a player's status updates.
      *
      * @param player player to manage.
-     * @param playerSubscriptionType the new subscription type
+     * @param tier how closely to follow the status of the player
      */
-    private void updatePlayerSubscription(
-            Player player,
-            @NonNull PlayerState.PlayerSubscriptionType playerSubscriptionType) {
+    private void updatePlayerSubscription(Player player, @NonNull SubscriptionPolicy.Tier tier) {
         PlayerState playerState = player.getPlayerState();
+        mDelegate.setStatusTier(player, tier);
 
         // Do nothing if the player subscription type hasn't changed.
-        if (playerState.getSubscriptionType().equals(playerSubscriptionType)) {
+        if (playerState.getSubscriptionType().equals(tier.subscriptionType)) {
             return;
         }
 
-        mDelegate.subscribePlayerStatus(player, playerSubscriptionType);
+        mDelegate.subscribePlayerStatus(player, tier.subscriptionType);
     }
 
     /**
@@ -825,13 +843,17 @@ public class SqueezeService extends Service {
 
     @Subscribe(priority = 1)
     public void onEvent(PlayersChanged event) {
+        if (!mDelegate.isConnected()) {
+            // Players restored from the snapshot, which are shown until the server status arrives
+            return;
+        }
         Player activePlayer = mDelegate.getActivePlayer();
-        if (activePlayer == null) {
+        Player currentActivePlayer = (activePlayer != null ? mDelegate.getPlayer(activePlayer.getId()) : null);
+        if (currentActivePlayer == null) {
             // Figure out the new active player, let everyone know.
             changeActivePlayer(getPreferredPlayer(mDelegate.getPlayers().values()));
         } else {
-            activePlayer = mDelegate.getPlayer(activePlayer.getId());
-            mDelegate.setActivePlayer(activePlayer);
+            mDelegate.setActivePlayer(currentActivePlayer);
             updateAllPlayerSubscriptionStates();
             requestPlayerData();
         }
@@ -1018,7 +1040,7 @@ public class SqueezeService extends Service {
         private void setPlayerVolume(Player player, int percentage) {
             int volume = Math.min(100, Math.max(0, percentage));
             mDelegate.command(player).cmd("mixer", "volume", String.valueOf(volume)).exec();
-            player.getPlayerState().setCurrentVolume(volume);
+            player.updatePlayerState(playerState -> playerState.setCurrentVolume(volume) ? PlayerStateChanged.VOLUME : 0);
             mEventBus.post(new PlayerVolume(player));
         }
 
@@ -1048,8 +1070,7 @@ public class SqueezeService extends Service {
 
         private void adjustPlayerVolume(Player player, int adjust) {
             mDelegate.command(player).cmd("mixer", "volume", (adjust > 0 ? "+" : "") + adjust).exec();
-            int currentVolume = player.getPlayerState().getCurrentVolume();
-            player.getPlayerState().setCurrentVolume(currentVolume + adjust);
+            player.updatePlayerState(playerState -> playerState.setCurrentVolume(playerState.getState().getCurrentVolume() + adjust) ? PlayerStateChanged.VOLUME : 0);
             mEventBus.post(new PlayerVolume(player));
         }
 
@@ -1429,11 +1450,24 @@ public class SqueezeService extends Service {
         }
 
 
+        @Override
+        public void setPlayerListVisible(boolean visible) {
+            mDelegate.getSubscriptionPolicy().setPlayerListVisible(visible);
+            if (isConnected()) {
+                updateAllPlayerSubscriptionStates();
+            }
+        }
+
         @Override
         public void cancelItemListRequests(Object client) {
             mDelegate.cancelClientRequests(client);
         }
 
+        @Override
+        public void cancelItemListRequest(Object client, int start) {
+            mDelegate.cancelClientRequest(client, start);
+        }
+
         @Override
         public void alarms(int start, IServiceItemListCallback<Alarm> callback) {
             if (!isConnected()) {
@@ -25,24 +25,66 @@ import org.cometd.client.transport.ClientTransport;
 import org.cometd.common.HashMapMessage;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import uk.org.ngo.squeezer.BuildConfig;
 
 /**
  * {@link BayeuxClient} implementation for the Squeezer App.
  * <p>
- * This is responsible for logging.
+ * This is responsible for logging, and for resuming the session when the streaming connection is
+ * lost.
  */
 class SqueezerBayeuxClient extends BayeuxClient {
     private static final String TAG = SqueezerBayeuxClient.class.getSimpleName();
     private static final boolean LOG_JSON_PRETTY_PRINT = false;
 
+    private volatile SessionListener mSessionListener;
+
+    /**
+     * Set when the streaming connection was lost and the {@link SessionListener} was told, until
+     * the session is resumed or a new handshake is made.
+     */
+    private volatile boolean mTakenOver;
+
+    /** Set while the connect sent by {@link #resume()} waits for its reply. */
+    private final AtomicBoolean mResuming = new AtomicBoolean();
+
     SqueezerBayeuxClient(String url, ClientTransport transport, ClientTransport... transports) {
         super(url, transport, transports);
     }
 
+    /**
+     * Callbacks for a session whose streaming connection is lost.
+     * <p>
+     * Without a listener a new handshake is made as soon as the connection is lost.
+     */
+    interface SessionListener {
+        /**
+         * The streaming connection was lost. Call {@link #resume()} to try to continue the
+         * session, or {@link #rehandshake()} to start a new one.
+         */
+        void onConnectionLost(Throwable failure);
+
+        /** The session continues on a new streaming connection, with its subscriptions. */
+        void onResumed();
+
+        /**
+         * The session could not be resumed.
+         *
+         * @param rejected True if the server answered, so it no longer knows the session, false
+         *     if the server could not be reached.
+         */
+        void onResumeFailed(boolean rejected);
+    }
+
+    void setSessionListener(SessionListener listener) {
+        mSessionListener = listener;
+    }
+
     @Override
     public void onSending(List<? extends Message> messages) {
         super.onSending(messages);
@@ -71,12 +113,111 @@ class SqueezerBayeuxClient extends BayeuxClient {
                 Log.v(TAG, "FAIL: " + message.getJSON(), failure);
             }
         }
-        if (failure instanceof IOException) {
+        SessionListener listener = mSessionListener;
+        if (hasConnect(messages) && mResuming.compareAndSet(true, false)) {
+            Log.i(TAG, "Session not resumed: " + failure);
+            listener.onResumeFailed(false);
+        } else if (failure instanceof IOException) {
+            if (listener != null && getTransport() instanceof HttpStreamingTransport) {
+                // Only report the first failure, until the session is resumed or a new one started
+                if (!mTakenOver) {
+                    mTakenOver = true;
+                    listener.onConnectionLost(failure);
+                }
+            } else {
+                rehandshake();
+            }
+        }
+    }
+
+    /**
+     * While the {@link SessionListener} handles a lost connection, the failed connect is not passed
+     * on. Otherwise the client would tell the listeners of the connect channel, and schedule a
+     * connect of its own, which would race the one sent by {@link #resume()}.
+     */
+    @Override
+    protected void messagesFailure(Throwable cause, List<? extends Message> messages) {
+        if (mTakenOver && hasConnect(messages)) {
+            List<Message> others = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                if (!Channel.META_CONNECT.equals(message.getChannel())) {
+                    others.add(message);
+                }
+            }
+            messages = others;
+        }
+        super.messagesFailure(cause, messages);
+    }
+
+    @Override
+    protected void processConnect(Message.Mutable connect) {
+        if (!mResuming.compareAndSet(true, false)) {
+            super.processConnect(connect);
+            return;
+        }
+
+        SessionListener listener = mSessionListener;
+        if (connect.isSuccessful()) {
+            // Processed as the reply to the connect of the client, so it is connected again and
+            // the listeners of the connect channel are notified.
+            mTakenOver = false;
+            super.processConnect(connect);
+            listener.onResumed();
+        } else {
+            Log.i(TAG, "Session not resumed: " + connect.getJSON());
+            listener.onResumeFailed(true);
+        }
+    }
+
+    /**
+     * Try to continue the current session on a new streaming connection, by sending a connect
+     * message with the current client id. The server keeps the subscriptions of the session for a
+     * while after the connection is lost, so nothing needs to be subscribed again.
+     * <p>
+     * The connect is sent as the connect of the client, so a successful reply is processed like
+     * any other, and the outcome is reported to the {@link SessionListener}.
+     */
+    void resume() {
+        SessionListener listener = mSessionListener;
+        ClientTransport transport = getTransport();
+        if (listener == null || !(transport instanceof HttpStreamingTransport) || getId() == null) {
             rehandshake();
+            return;
+        }
+
+        Log.i(TAG, "Resume session " + getId());
+        mResuming.set(true);
+        ((HttpStreamingTransport) transport).prepareResume();
+        if (!super.sendConnect() && mResuming.compareAndSet(true, false)) {
+            listener.onResumeFailed(false);
+        }
+    }
+
+    /**
+     * While the {@link SessionListener} handles a lost connection, the connects the client
+     * schedules itself are not sent, so only the one sent by {@link #resume()} is.
+     */
+    @Override
+    protected boolean sendConnect() {
+        if (mTakenOver) {
+            Log.v(TAG, "Connection lost, leave the connect to resume()");
+            return false;
+        }
+        return super.sendConnect();
+    }
+
+    private static boolean hasConnect(List<? extends Message> messages) {
+        for (Message message : messages) {
+            if (Channel.META_CONNECT.equals(message.getChannel())) {
+                return true;
+            }
         }
+        return false;
     }
 
     public void rehandshake() {
+        mResuming.set(false);
+        mTakenOver = false;
         HashMapMessage message = new HashMapMessage();
         message.setId(newMessageId());
         message.setSuccessful(false);
@@ -0,0 +1,299 @@
+package uk.org.ngo.squeezer.service;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.util.ImageCache;
+
+/**
+ * The last known players, their status and the home menu of a server, saved so the app can show
+ * them as soon as it starts, while it connects to the server.
+ * <p>
+ * Everything is kept as the records received from the server, so it is restored by the same code
+ * which handles the live data. The snapshot is written in a compact binary format, with a version
+ * number so snapshots written by other versions of the app are ignored.
+ */
+class StateSnapshot {
+    private static final String TAG = StateSnapshot.class.getSimpleName();
+
+    /** Version of the format, change when the format or the meaning of the content changes */
+    private static final int VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte TRUE = 4;
+    private static final byte FALSE = 5;
+    private static final byte ARRAY = 6;
+    private static final byte MAP = 7;
+
+    /** Address of the server */
+    @NonNull
+    final String server;
+
+    /** Id of the active player, if any */
+    @Nullable
+    final String activePlayerId;
+
+    /** Records of the players, as in the server status */
+    @NonNull
+    final List<Map<String, Object>> players;
+
+    /** The last status of each player, by player id */
+    @NonNull
+    final Map<String, Map<String, Object>> playerStatus;
+
+    /** Records of the items of the home menu, as received from the server */
+    @NonNull
+    final List<Map<String, Object>> homeMenu;
+
+    StateSnapshot(@NonNull String server, @Nullable String activePlayerId, @NonNull List<Map<String, Object>> players,
+                  @NonNull Map<String, Map<String, Object>> playerStatus, @NonNull List<Map<String, Object>> homeMenu) {
+        this.server = server;
+        this.activePlayerId = activePlayerId;
+        this.players = players;
+        this.playerStatus = playerStatus;
+        this.homeMenu = homeMenu;
+    }
+
+    /** @return The file for the snapshot of the supplied server. */
+    @NonNull
+    static File getFile(@NonNull File directory, @NonNull String server) {
+        return new File(directory, ImageCache.hashKeyForDisk(server));
+    }
+
+    /**
+     * @return The snapshot of the supplied server, or null if there is none, or if it can't be read.
+     */
+    @Nullable
+    static StateSnapshot load(@NonNull File file, @NonNull String server) {
+        try (InputStream in = new AtomicFile(file).openRead()) {
+            StateSnapshot snapshot = readFrom(in);
+            return (snapshot != null && server.equals(snapshot.server)) ? snapshot : null;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Can't read snapshot from " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the snapshot. The file is replaced in one go, so a snapshot is never partly written.
+     */
+    void save(@NonNull File file) {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists()) {
+            directory.mkdirs();
+        }
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
+            writeTo(out);
+            atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Can't write snapshot to " + file + ": " + e);
+            if (out != null) {
+                atomicFile.failWrite(out);
+            }
+        }
+    }
+
+    /**
+     * @return The snapshot in the supplied stream, or null if it is written by another version.
+     * @throws IOException If the snapshot can't be read, or is corrupt.
+     */
+    @Nullable
+    static StateSnapshot readFrom(@NonNull InputStream stream) throws IOException {
+        // The snapshot is read into memory, so lengths can be checked against the bytes left
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, n);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        if (in.readInt() != VERSION) {
+            return null;
+        }
+        String server = readString(in);
+        String activePlayerId = in.readBoolean() ? readString(in) : null;
+        List<Map<String, Object>> players = readRecords(in);
+        Map<String, Map<String, Object>> playerStatus = new HashMap<>();
+        for (int i = readLength(in); i > 0; i--) {
+            playerStatus.put(readString(in), readRecord(in));
+        }
+        List<Map<String, Object>> homeMenu = readRecords(in);
+        return new StateSnapshot(server, activePlayerId, players, playerStatus, homeMenu);
+    }
+
+    /** Write the snapshot to the supplied stream, which is not closed. */
+    void writeTo(@NonNull OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(VERSION);
+        writeString(out, server);
+        out.writeBoolean(activePlayerId != null);
+        if (activePlayerId != null) {
+            writeString(out, activePlayerId);
+        }
+        writeRecords(out, players);
+        out.writeInt(playerStatus.size());
+        for (Map.Entry<String, Map<String, Object>> entry : playerStatus.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+        writeRecords(out, homeMenu);
+        out.flush();
+    }
+
+    private static void writeRecords(DataOutputStream out, List<Map<String, Object>> records) throws IOException {
+        out.writeInt(records.size());
+        for (Map<String, Object> record : records) {
+            writeValue(out, record);
+        }
+    }
+
+    private static List<Map<String, Object>> readRecords(DataInputStream in) throws IOException {
+        int size = readLength(in);
+        List<Map<String, Object>> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            records.add(readRecord(in));
+        }
+        return records;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readRecord(DataInputStream in) throws IOException {
+        Object value = readValue(in);
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected a record, got " + value);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Write a value as parsed from JSON. Arrays and collections are both read back as arrays, and
+     * all integral numbers as longs, as the JSON parser does. Other values are written as strings.
+     */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            out.writeByte(ARRAY);
+            out.writeInt(array.length);
+            for (Object element : array) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Collection) {
+            writeValue(out, ((Collection<?>) value).toArray());
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case ARRAY: {
+                Object[] array = new Object[readLength(in)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readValue(in);
+                }
+                return array;
+            }
+            case MAP: {
+                int size = readLength(in);
+                Map<String, Object> map = new HashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    String key = readString(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Unknown type " + type);
+        }
+    }
+
+    /** Strings are written as length and UTF-8, as writeUTF is limited to 64KB. */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the length of a string, or the number of elements of a list or map. Each byte or
+     * element takes at least one byte, so a length beyond the bytes left means the snapshot is
+     * corrupt, and must not be used to allocate memory.
+     */
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Bad length " + length + ", " + in.available() + " bytes left");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,160 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import uk.org.ngo.squeezer.model.Player;
+import uk.org.ngo.squeezer.model.PlayerState;
+
+/**
+ * Decides how closely to follow the status of each player, so status messages are only received
+ * and parsed for players the app shows.
+ * <p>
+ * The active player, and the players synced to it, always get full status pushes, because the
+ * notification and the media session show them while the app is connected. Other players are
+ * polled while the player list is visible, and otherwise only followed through server status,
+ * which tells their name, power and whether they are connected.
+ * <p>
+ * Status messages received are counted per tier, see {@link #getStats(long)}.
+ */
+class SubscriptionPolicy {
+    /** Time in milliseconds between status requests for players in the {@link Tier#POLL} tier. */
+    static final long POLL_INTERVAL = 5_000;
+
+    enum Tier {
+        /** The server pushes the status of the player whenever it changes. */
+        PUSH(PlayerState.PlayerSubscriptionType.NOTIFY_ON_CHANGE),
+        /** The status of the player is requested every {@link #POLL_INTERVAL} milliseconds. */
+        POLL(PlayerState.PlayerSubscriptionType.NOTIFY_NONE),
+        /** The player is only followed through server status. */
+        SERVER_STATUS(PlayerState.PlayerSubscriptionType.NOTIFY_NONE);
+
+        /** The status subscription of players in this tier */
+        final PlayerState.PlayerSubscriptionType subscriptionType;
+
+        Tier(PlayerState.PlayerSubscriptionType subscriptionType) {
+            this.subscriptionType = subscriptionType;
+        }
+    }
+
+    private volatile boolean mPlayerListVisible;
+
+    /** Current tier by player id */
+    private final Map<String, Tier> mTiers = new ConcurrentHashMap<>();
+
+    private final Map<Tier, TierStats> mStats = new EnumMap<>(Tier.class);
+
+    /** Start time of the statistics in milliseconds */
+    private long mStatsStart;
+
+    SubscriptionPolicy() {
+        resetStats(0);
+    }
+
+    /** Tell whether the player list is visible, so the players in it must be kept up to date. */
+    void setPlayerListVisible(boolean visible) {
+        mPlayerListVisible = visible;
+    }
+
+    /** @return The tier the supplied player should be in. */
+    @NonNull
+    Tier tierFor(@NonNull Player player, @Nullable Player activePlayer) {
+        if (activePlayer != null && isSyncedTo(player, activePlayer)) {
+            return Tier.PUSH;
+        }
+        return mPlayerListVisible ? Tier.POLL : Tier.SERVER_STATUS;
+    }
+
+    private static boolean isSyncedTo(Player player, Player activePlayer) {
+        String playerId = player.getId();
+        if (playerId.equals(activePlayer.getId())) {
+            return true;
+        }
+        PlayerState activePlayerState = activePlayer.getPlayerState();
+        return playerId.equals(activePlayerState.getSyncMaster()) || activePlayerState.getSyncSlaves().contains(playerId);
+    }
+
+    void setTier(@NonNull String playerId, @NonNull Tier tier) {
+        mTiers.put(playerId, tier);
+    }
+
+    /** Forget the tiers of players which are no longer known. */
+    void retainPlayers(@NonNull Collection<String> playerIds) {
+        mTiers.keySet().retainAll(playerIds);
+    }
+
+    void clearTiers() {
+        mTiers.clear();
+    }
+
+    /** @return The tier the supplied player is in, {@link Tier#SERVER_STATUS} if it is not known. */
+    @NonNull
+    Tier getTier(@NonNull String playerId) {
+        Tier tier = mTiers.get(playerId);
+        return tier != null ? tier : Tier.SERVER_STATUS;
+    }
+
+    /** @return The ids of the players in the supplied tier. */
+    @NonNull
+    List<String> getPlayerIds(@NonNull Tier tier) {
+        List<String> playerIds = new ArrayList<>();
+        for (Map.Entry<String, Tier> entry : mTiers.entrySet()) {
+            if (entry.getValue() == tier) {
+                playerIds.add(entry.getKey());
+            }
+        }
+        return playerIds;
+    }
+
+    /**
+     * Count a status message for a player.
+     *
+     * @param size Size in characters of the message, as received
+     */
+    synchronized void onStatusMessage(@NonNull String playerId, int size) {
+        TierStats stats = mStats.get(getTier(playerId));
+        stats.messages++;
+        stats.size += size;
+    }
+
+    synchronized void resetStats(long now) {
+        mStatsStart = now;
+        for (Tier tier : Tier.values()) {
+            mStats.put(tier, new TierStats());
+        }
+    }
+
+    /**
+     * @param now Current time in milliseconds, on the clock used for {@link #resetStats(long)}
+     * @return Description of the rate of status messages in each tier since the last reset.
+     */
+    @NonNull
+    synchronized String getStats(long now) {
+        double minutes = Math.max(now - mStatsStart, 1) / 60_000.0;
+        StringBuilder sb = new StringBuilder("Status{");
+        for (Tier tier : Tier.values()) {
+            TierStats stats = mStats.get(tier);
+            if (tier.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(tier).append("=")
+                    .append(getPlayerIds(tier).size()).append(" players ")
+                    .append(String.format(Locale.ROOT, "%.1f", stats.messages / minutes)).append(" msg/min ")
+                    .append(String.format(Locale.ROOT, "%.0f", stats.size / minutes)).append(" chars/min");
+        }
+        return sb.append('}').toString();
+    }
+
+    private static class TierStats {
+        int messages;
+        long size;
+    }
+}
@@ -20,20 +20,58 @@ package uk.org.ngo.squeezer.service.event;
 import androidx.annotation.NonNull;
 
 import uk.org.ngo.squeezer.model.Player;
+import uk.org.ngo.squeezer.model.PlayerState;
 
-/** Event sent when a player's state has changed. */
+/**
+ * Event sent when a player's state has changed.
+ * <p>
+ * One event is sent for all the changes in a status message from the server, with a bitmask of
+ * the parts of the state that changed.
+ */
 public class PlayerStateChanged {
+    public static final int POWER = 1;
+    public static final int PLAY_STATUS = 1 << 1;
+    public static final int SHUFFLE = 1 << 2;
+    public static final int REPEAT = 1 << 3;
+    public static final int PLAYLIST = 1 << 4;
+    public static final int SONG = 1 << 5;
+    /** The duration of the song or the position in it */
+    public static final int SONG_TIME = 1 << 6;
+    public static final int VOLUME = 1 << 7;
+    public static final int SLEEP = 1 << 8;
+    public static final int SYNC = 1 << 9;
+    public static final int PREFS = 1 << 10;
+    public static final int ALL = ~0;
+
     /** The player with changed state. */
     @NonNull public final Player player;
 
+    /** The player's new state. */
+    @NonNull public final PlayerState playerState;
+
+    /** Bitmask of the changed parts of the state. */
+    public final int changes;
+
     public PlayerStateChanged(@NonNull Player player) {
+        this(player, player.getPlayerState(), ALL);
+    }
+
+    public PlayerStateChanged(@NonNull Player player, @NonNull PlayerState playerState, int changes) {
         this.player = player;
+        this.playerState = playerState;
+        this.changes = changes;
+    }
+
+    /** @return Whether any of the parts of the state in <code>mask</code> changed. */
+    public boolean changed(int mask) {
+        return (changes & mask) != 0;
     }
 
     @Override
     public String toString() {
         return "PlayerStateChanged{" +
                 "player=" + player +
+                ", changes=" + Integer.toHexString(changes) +
                 '}';
     }
 }
@@ -0,0 +1,70 @@
+package uk.org.ngo.squeezer.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites artwork URLs so the server resizes the artwork to the size it is displayed at.
+ * <p>
+ * LMS resizes cover art (<code>/music/&lt;id&gt;/cover</code>) and images it proxies
+ * (<code>/imageproxy/&lt;url&gt;/image.png</code>) if the name of the image has a
+ * <code>_WxH</code> suffix. The size is rounded up to one of a few standard sizes, so the same
+ * image is fetched and cached once for views of similar size. Other URLs are not changed.
+ */
+class ArtworkUrls {
+    /** Sizes in pixels to request artwork in */
+    private static final int[] SIZES = {64, 128, 256, 512, 1024};
+
+    /**
+     * Name of an image LMS can resize, with its optional size, resize mode and extension.
+     */
+    private static final Pattern RESIZABLE_PATTERN = Pattern.compile(
+            "^(.*/(?:music/[^/]+/(?:cover|thumb)|imageproxy/.+/image))(?:_\\d*x\\d*)?(_[a-zA-Z])?(\\.\\w+)?$");
+
+    private ArtworkUrls() {
+    }
+
+    /**
+     * @param url URL of the image
+     * @param width Width the image is displayed at
+     * @param height Height the image is displayed at
+     *
+     * @return A URL to fetch the image at the smallest standard size at least as large as the
+     * requested size, or <code>url</code> if the image can't be resized.
+     */
+    @NonNull
+    static String resize(@NonNull String url, int width, int height) {
+        int size = getSize(Math.max(width, height));
+        if (size <= 0 || url.indexOf('?') >= 0) {
+            return url;
+        }
+
+        Matcher matcher = RESIZABLE_PATTERN.matcher(url);
+        if (!matcher.matches()) {
+            return url;
+        }
+
+        String mode = matcher.group(2);
+        String extension = matcher.group(3);
+        return matcher.group(1) + '_' + size + 'x' + size
+                + (mode != null ? mode : "") + (extension != null ? extension : "");
+    }
+
+    /**
+     * @return The smallest standard size which is at least <code>size</code>, or 0 if
+     * <code>size</code> is not positive or larger than the largest standard size.
+     */
+    static int getSize(int size) {
+        if (size <= 0) {
+            return 0;
+        }
+        for (int standardSize : SIZES) {
+            if (standardSize >= size) {
+                return standardSize;
+            }
+        }
+        return 0;
+    }
+}
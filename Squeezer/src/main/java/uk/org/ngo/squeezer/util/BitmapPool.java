@@ -0,0 +1,118 @@
+package uk.org.ngo.squeezer.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps which are no longer used, kept so their memory can be reused to decode other bitmaps via
+ * {@link BitmapFactory.Options#inBitmap}, instead of allocating a new bitmap for every decode.
+ * <p>
+ * The bitmaps are bucketed by the size of their allocation. A decode gets a bitmap from the
+ * smallest bucket that is large enough, unless that wastes more than half of the bitmap's memory.
+ * Artwork in a list is usually decoded at the same size, so most decodes find an exact match.
+ * <p>
+ * When the pool is full, bitmaps are dropped from the largest bucket first.
+ */
+class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    /** A bitmap is only reused if it is at most this many times larger than required */
+    private static final int MAX_WASTE_FACTOR = 2;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+    private final int mMaxSize;
+
+    private int mSize;
+
+    private int mHits;
+    private int mMisses;
+    private int mPuts;
+    private int mEvictions;
+
+    /**
+     * @param maxSize Maximum total size of the pooled bitmaps, in bytes
+     */
+    BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Add a bitmap to the pool. The caller must make sure that the bitmap is no longer used.
+     */
+    synchronized void put(@NonNull Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > mMaxSize) {
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        mSize += size;
+        mPuts++;
+
+        while (mSize > mMaxSize) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = mBuckets.lastEntry();
+            largest.getValue().pollFirst();
+            removed(largest.getKey());
+            mEvictions++;
+        }
+    }
+
+    /**
+     * @return A bitmap with room for at least <code>byteCount</code> bytes, which the caller now
+     * owns, or null if there is no suitable bitmap in the pool.
+     */
+    @Nullable
+    synchronized Bitmap get(int byteCount) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(byteCount);
+        if (entry == null || entry.getKey() > (long) byteCount * MAX_WASTE_FACTOR) {
+            mMisses++;
+            return null;
+        }
+
+        Bitmap bitmap = entry.getValue().pollLast();
+        removed(entry.getKey());
+        mHits++;
+        return bitmap;
+    }
+
+    /** Update the bookkeeping after a bitmap of the supplied size was taken from its bucket */
+    private void removed(int size) {
+        if (mBuckets.get(size).isEmpty()) {
+            mBuckets.remove(size);
+        }
+        mSize -= size;
+    }
+
+    /** Drop all bitmaps in the pool. */
+    synchronized void clear() {
+        mBuckets.clear();
+        mSize = 0;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        int requests = mHits + mMisses;
+        return String.format(Locale.ROOT,
+                "%s{hits=%d, misses=%d (%.1f%% hits), puts=%d, evictions=%d, size=%d of %d}",
+                TAG, mHits, mMisses, (requests > 0 ? 100f * mHits / requests : 0f),
+                mPuts, mEvictions, mSize, mMaxSize);
+    }
+}
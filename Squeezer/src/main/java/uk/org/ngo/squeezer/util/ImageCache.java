@@ -37,6 +37,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import uk.org.ngo.squeezer.BuildConfig;
 import uk.org.ngo.squeezer.Util;
@@ -77,12 +79,42 @@ public class ImageCache {
 
     private LruCache<String, Bitmap> mMemoryCache;
 
+    /** Bitmaps whose memory can be reused when decoding, null if the memory cache is disabled */
+    @Nullable
+    private BitmapPool mBitmapPool;
+
+    /**
+     * Number of references to the bitmaps from the memory cache, and from the users of bitmaps
+     * returned by {@link #acquireBitmapFromMemCache(String)} and
+     * {@link #addBitmapToMemoryCache(String, Bitmap, boolean)}. When the last reference is
+     * released, the bitmap goes to the {@link BitmapPool}.
+     * <p>
+     * Bitmaps which are not in the map are not reused. The map is weak so bitmaps whose references
+     * are never released can still be garbage collected.
+     */
+    private final Map<Bitmap, BitmapRef> mBitmapRefs = new WeakHashMap<>();
+
     private ImageCacheParams mCacheParams;
 
+    /**
+     * Guards opening, clearing and closing the disk cache. Reads and writes of entries only hold
+     * it while waiting for the disk cache to start, so they can run in parallel.
+     */
     private final Object mDiskCacheLock = new Object();
 
     private boolean mDiskCacheStarting = true;
 
+    /** Number of locks to serialize writes of the same key with */
+    private static final int WRITE_LOCK_STRIPES = 16;
+
+    private final Object[] mWriteLocks = new Object[WRITE_LOCK_STRIPES];
+
+    {
+        for (int i = 0; i < WRITE_LOCK_STRIPES; i++) {
+            mWriteLocks[i] = new Object();
+        }
+    }
+
     /**
      * Creating a new ImageCache object using the specified parameters.
      *
@@ -145,9 +177,15 @@ public class ImageCache {
             mMemoryCache = new LruCache<String, Bitmap>(mCacheParams.memCacheSize) {
                 @Override
                 protected int sizeOf(String key, Bitmap bitmap) {
-                    return (bitmap.getRowBytes() * bitmap.getHeight());
+                    return bitmap.getAllocationByteCount();
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                    releaseBitmap(oldValue);
                 }
             };
+            mBitmapPool = new BitmapPool(mCacheParams.memCacheSize / 4);
         }
 
         // By default the disk cache is not initialized here as it should be initialized
@@ -220,18 +258,48 @@ public class ImageCache {
      * @param bitmap The bitmap to store
      */
     public void addBitmapToMemoryCache(String data, Bitmap bitmap) {
+        addBitmapToMemoryCache(data, bitmap, false);
+    }
+
+    /**
+     * Adds a newly decoded bitmap to the memory cache.
+     *
+     * @param data Unique identifier for the bitmap to store
+     * @param bitmap The bitmap to store
+     * @param retain If true, the caller also gets a reference to the bitmap, which it must
+     * {@link #releaseBitmap(Bitmap) release} when it no longer uses the bitmap
+     */
+    public void addBitmapToMemoryCache(String data, Bitmap bitmap, boolean retain) {
         if (data == null || bitmap == null) {
             return;
         }
 
         // Add to memory cache
-        if (mMemoryCache != null && mMemoryCache.get(data) == null) {
+        boolean add = (mMemoryCache != null && mMemoryCache.get(data) == null);
+        if (!add && !retain) {
+            return;
+        }
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (ref == null) {
+                ref = new BitmapRef(data);
+                mBitmapRefs.put(bitmap, ref);
+            }
+            if (add) {
+                ref.count++;
+            }
+            if (retain) {
+                ref.count++;
+            }
+        }
+        if (add) {
             mMemoryCache.put(data, bitmap);
         }
     }
 
     /**
-     * Adds a bitmap to the disk cache.
+     * Adds a bitmap to the disk cache. Bitmaps with transparency are stored as PNG, others in the
+     * compress format of the cache parameters.
      *
      * @param data Unique identifier for the bitmap to store
      * @param bitmap The bitmap to store
@@ -241,16 +309,18 @@ public class ImageCache {
             return;
         }
 
-        synchronized (mDiskCacheLock) {
-            // Add to disk cache
-            if (mDiskLruCache != null) {
-                final String key = hashKeyForDisk(data);
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
+        // Add to disk cache
+        final DiskLruCache diskLruCache = getDiskLruCache();
+        if (diskLruCache != null) {
+            final String key = hashKeyForDisk(data);
+            synchronized (getWriteLock(key)) {
+                try (DiskLruCache.Snapshot snapshot = diskLruCache.get(key)) {
                     if (snapshot == null) {
-                        final DiskLruCache.Editor editor = mDiskLruCache.edit(key);
+                        final DiskLruCache.Editor editor = diskLruCache.edit(key);
                         if (editor != null) {
                             try (OutputStream out = editor.newOutputStream(DISK_CACHE_INDEX)) {
-                                bitmap.compress(mCacheParams.compressFormat, mCacheParams.compressQuality, out);
+                                CompressFormat format = (bitmap.hasAlpha() ? CompressFormat.PNG : mCacheParams.compressFormat);
+                                bitmap.compress(format, mCacheParams.compressQuality, out);
                                 editor.commit();
                             }
                         }
@@ -275,13 +345,14 @@ public class ImageCache {
             return;
         }
 
-        synchronized (mDiskCacheLock) {
-            // Add to disk cache
-            if (mDiskLruCache != null) {
-                final String key = hashKeyForDisk(data);
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
+        // Add to disk cache
+        final DiskLruCache diskLruCache = getDiskLruCache();
+        if (diskLruCache != null) {
+            final String key = hashKeyForDisk(data);
+            synchronized (getWriteLock(key)) {
+                try (DiskLruCache.Snapshot snapshot = diskLruCache.get(key)) {
                     if (snapshot == null) {
-                        final DiskLruCache.Editor editor = mDiskLruCache.edit(key);
+                        final DiskLruCache.Editor editor = diskLruCache.edit(key);
                         if (editor != null) {
                             try (OutputStream out = editor.newOutputStream(DISK_CACHE_INDEX)) {
                                 out.write(bytes);
@@ -299,7 +370,8 @@ public class ImageCache {
     }
 
     /**
-     * Get from memory cache.
+     * Get from memory cache. The returned bitmap is never reused for another image, use
+     * {@link #acquireBitmapFromMemCache(String)} if the caller can release it.
      *
      * @param data Unique identifier for which item to get
      *
@@ -324,7 +396,100 @@ public class ImageCache {
             */
         }
 
-        return bitmap;
+        return (bitmap != null && pinBitmap(data, bitmap) ? bitmap : null);
+    }
+
+    /**
+     * Get from memory cache, and take a reference to the bitmap so it isn't reused while the
+     * caller uses it. The caller must {@link #releaseBitmap(Bitmap) release} the bitmap when it no
+     * longer uses it.
+     *
+     * @param data Unique identifier for which item to get
+     *
+     * @return The bitmap if found in cache, null otherwise
+     */
+    @Nullable
+    public Bitmap acquireBitmapFromMemCache(String data) {
+        Bitmap bitmap = (mMemoryCache != null ? mMemoryCache.get(data) : null);
+        return (bitmap != null && retainBitmap(data, bitmap) ? bitmap : null);
+    }
+
+    /**
+     * Take another reference to a bitmap returned from {@link #acquireBitmapFromMemCache(String)}
+     * or {@link #addBitmapToMemoryCache(String, Bitmap, boolean)}.
+     *
+     * @return False if the bitmap was released meanwhile, and may have been reused for another
+     * image, in which case the bitmap must not be used.
+     */
+    public boolean retainBitmap(String data, Bitmap bitmap) {
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (ref == null || ref.count == 0 || !ref.data.equals(data)) {
+                return false;
+            }
+            ref.count++;
+            return true;
+        }
+    }
+
+    /**
+     * Keep a bitmap from being reused, because it is handed to code which doesn't release it.
+     *
+     * @return False if the bitmap was released meanwhile, and may have been reused for another
+     * image, in which case the bitmap must not be used.
+     */
+    public boolean pinBitmap(String data, Bitmap bitmap) {
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (ref == null || ref.count == 0 || !ref.data.equals(data)) {
+                return false;
+            }
+            ref.pinned = true;
+            return true;
+        }
+    }
+
+    /**
+     * Release a reference to a bitmap. When the bitmap has no more references, it is no longer
+     * displayed or in the memory cache, and its memory can be reused.
+     */
+    public void releaseBitmap(Bitmap bitmap) {
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (ref == null || ref.count == 0 || --ref.count > 0) {
+                return;
+            }
+            mBitmapRefs.remove(bitmap);
+            if (ref.pinned) {
+                return;
+            }
+        }
+        if (mBitmapPool != null) {
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Get a bitmap to decode into from the pool of unused bitmaps.
+     *
+     * @param options Options to decode with, with the out* fields populated by a decode with
+     * inJustDecodeBounds set, and inSampleSize set.
+     *
+     * @return A bitmap to set as {@link BitmapFactory.Options#inBitmap}, or null if there is none
+     * of a suitable size.
+     */
+    @Nullable
+    public Bitmap getReusableBitmap(BitmapFactory.Options options) {
+        if (mBitmapPool == null || options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // The decoder rounds the sample size down to a power of 2
+        int sampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        int bytesPerPixel = (options.inPreferredConfig == Bitmap.Config.RGB_565 ? 2 : 4);
+        return mBitmapPool.get(width * height * bytesPerPixel);
     }
 
     /**
@@ -337,30 +502,23 @@ public class ImageCache {
     @Nullable
     public Bitmap getBitmapFromDiskCache(String data) {
         final String key = hashKeyForDisk(data);
-        synchronized (mDiskCacheLock) {
-            while (mDiskCacheStarting) {
-                try {
-                    mDiskCacheLock.wait();
-                } catch (InterruptedException e) {
-                }
-            }
-            if (mDiskLruCache != null) {
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
-                    if (snapshot != null) {
-                        if (BuildConfig.DEBUG) {
-                            Log.d(TAG, "Disk cache hit");
-                        }
-                        final InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                        if (inputStream != null) {
-                            return BitmapFactory.decodeStream(inputStream);
-                        }
+        final DiskLruCache diskLruCache = getDiskLruCache();
+        if (diskLruCache != null) {
+            try (DiskLruCache.Snapshot snapshot = diskLruCache.get(key)) {
+                if (snapshot != null) {
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Disk cache hit");
+                    }
+                    final InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
+                    if (inputStream != null) {
+                        return BitmapFactory.decodeStream(inputStream);
                     }
-                } catch (final IOException e) {
-                    Log.e(TAG, "getBitmapFromDiskCache - " + e);
                 }
+            } catch (final IOException | IllegalStateException e) {
+                Log.e(TAG, "getBitmapFromDiskCache - " + e);
             }
-            return null;
         }
+        return null;
     }
 
     /**
@@ -373,6 +531,36 @@ public class ImageCache {
     @Nullable
     public byte[] getBytesFromDiskCache(String data) {
         final String key = hashKeyForDisk(data);
+        final DiskLruCache diskLruCache = getDiskLruCache();
+        if (diskLruCache != null) {
+            try (DiskLruCache.Snapshot snapshot = diskLruCache.get(key)) {
+                if (snapshot != null) {
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Disk cache hit");
+                    }
+                    InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
+                    if (inputStream != null) {
+                        return Util.toByteArray(inputStream);
+                    }
+                }
+            } catch (final IOException | IllegalStateException e) {
+                Log.e(TAG, "getBitmapFromDiskCache - " + e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wait for the disk cache to start, and return it.
+     * <p>
+     * The lock is only held while waiting. {@link DiskLruCache} is thread safe, and only
+     * synchronizes briefly on its index, so entries can be read and written in parallel. If the
+     * cache is closed or cleared meanwhile, the operation fails with an exception.
+     *
+     * @return The disk cache, or null if there is none
+     */
+    @Nullable
+    private DiskLruCache getDiskLruCache() {
         synchronized (mDiskCacheLock) {
             while (mDiskCacheStarting) {
                 try {
@@ -380,25 +568,18 @@ public class ImageCache {
                 } catch (InterruptedException e) {
                 }
             }
-            if (mDiskLruCache != null) {
-                try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key)) {
-                    if (snapshot != null) {
-                        if (BuildConfig.DEBUG) {
-                            Log.d(TAG, "Disk cache hit");
-                        }
-                        InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                        if (inputStream != null) {
-                            return Util.toByteArray(inputStream);
-                        }
-                    }
-                } catch (final IOException e) {
-                    Log.e(TAG, "getBitmapFromDiskCache - " + e);
-                }
-            }
-            return null;
+            return mDiskLruCache;
         }
     }
 
+    /**
+     * @return The lock to hold while checking for and writing the entry for the supplied key, so
+     * concurrent writers of the same entry don't both write it.
+     */
+    private Object getWriteLock(String key) {
+        return mWriteLocks[(key.hashCode() & 0x7fffffff) % WRITE_LOCK_STRIPES];
+    }
+
     /**
      * Clears both the memory and disk cache associated with this ImageCache object. Note that this
      * includes disk access so this should not be executed on the main/UI thread.
@@ -428,6 +609,10 @@ public class ImageCache {
             mMemoryCache.evictAll();
             Log.d(TAG, "Memory cache cleared");
         }
+        if (mBitmapPool != null) {
+            Log.d(TAG, mBitmapPool.toString());
+            mBitmapPool.clear();
+        }
     }
 
     /**
@@ -442,6 +627,9 @@ public class ImageCache {
                     if (BuildConfig.DEBUG) {
                         Log.d(TAG, "Disk cache flushed");
                     }
+                    if (BuildConfig.DEBUG && mBitmapPool != null) {
+                        Log.d(TAG, mBitmapPool.toString());
+                    }
                 } catch (IOException e) {
                     Log.e(TAG, "flush - " + e);
                 }
@@ -471,6 +659,21 @@ public class ImageCache {
         }
     }
 
+    /** References to a bitmap from the memory cache and its users */
+    private static class BitmapRef {
+        /** Memory cache key of the image in the bitmap */
+        final String data;
+
+        int count;
+
+        /** True if the bitmap must never be reused */
+        boolean pinned;
+
+        BitmapRef(String data) {
+            this.data = data;
+        }
+    }
+
     /**
      * A holder class that contains cache parameters.
      */
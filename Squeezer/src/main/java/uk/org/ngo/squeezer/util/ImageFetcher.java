@@ -21,16 +21,13 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLDecoder;
-import java.util.HashMap;
-import java.util.Map;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
 
 import uk.org.ngo.squeezer.R;
-import uk.org.ngo.squeezer.Util;
 
 /**
  * A subclass of {@link ImageWorker} that fetches images from a URL.
@@ -38,6 +35,12 @@ import uk.org.ngo.squeezer.Util;
 public class ImageFetcher extends ImageWorker {
     private static final String TAG = "ImageFetcher";
 
+    /** Time in milliseconds to wait for an image to download */
+    private static final long TIMEOUT = 15_000;
+
+    /** Largest image to download, in bytes */
+    private static final int MAX_IMAGE_SIZE = 16 * 1024 * 1024;
+
     private volatile static ImageFetcher sImageFetcher;
 
     private ImageFetcher(Context context) {
@@ -93,68 +96,53 @@ public class ImageFetcher extends ImageWorker {
             return null;
         }
 
-        String data = params.data.toString();
-        Log.d(TAG, "processBitmap: " + data);
+        byte[] bytes = downloadUrl(params.sizedData.toString());
 
-        HttpURLConnection urlConnection = null;
-        InputStream in = null;
-        byte[] bytes = null;
+        // Servers which can't resize the image may not know the resized URL
+        if (bytes == null && !params.sizedData.equals(params.data)) {
+            bytes = downloadUrl(params.data.toString());
+        }
 
-        try {
-            URL resourceUrl, base, next;
-            Map<String, Integer> visited;
-            String location;
-
-            visited = new HashMap<>();
-
-            while (true)
-            {
-                Integer times = visited.get(data);
-                if (times == null) times = 0;
-                visited.put(data, ++times);
-
-                if (times > 3)
-                    throw new IOException("Stuck in redirect loop");
-
-                resourceUrl = new URL(data);
-                urlConnection = (HttpURLConnection) resourceUrl.openConnection();
-
-                urlConnection.setConnectTimeout(15000);
-                urlConnection.setReadTimeout(15000);
-                urlConnection.setInstanceFollowRedirects(false);   // Make the logic below easier to detect redirections
-
-                switch (urlConnection.getResponseCode())
-                {
-                    case HttpURLConnection.HTTP_MOVED_PERM:
-                    case HttpURLConnection.HTTP_MOVED_TEMP:
-                        location = urlConnection.getHeaderField("Location");
-                        location = URLDecoder.decode(location, "UTF-8");
-                        base     = new URL(data);
-                        next     = new URL(base, location);  // Deal with relative URLs
-                        data      = next.toExternalForm();
-                        continue;
-                }
+        return bytes;
+    }
 
-                break;
-            }
+    /**
+     * Ask LMS to resize its artwork to the size it is displayed at, instead of downloading the
+     * full size image and throwing most of it away when decoding.
+     */
+    @NonNull
+    @Override
+    protected Object getSizedData(@NonNull Object data, int width, int height) {
+        String url = data.toString();
+        String resized = ArtworkUrls.resize(url, width, height);
+        return (resized.equals(url) ? data : resized);
+    }
 
-            in = urlConnection.getInputStream();
-            bytes = Util.toByteArray(in);
-        } catch (final IOException e) {
-            Log.e(TAG, "Error in downloadUrlToStream - " + data + e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            try {
-                if (in != null) {
-                    in.close();
-                }
-            } catch (final IOException e) {
-                Log.e(TAG, "Closing input stream failed");
+    /**
+     * Download an image with the shared HTTP client, which follows redirects.
+     *
+     * @return Undecoded bytes for the image, null if downloading failed.
+     */
+    private byte[] downloadUrl(String data) {
+        Log.d(TAG, "processBitmap: " + data);
+
+        Request request = null;
+        try {
+            request = SharedHttpClient.getInstance().newRequest(data).timeout(TIMEOUT, TimeUnit.MILLISECONDS);
+            ContentResponse response = SharedHttpClient.getInstance().sendArtworkRequest(request, MAX_IMAGE_SIZE);
+            if (!HttpStatus.isSuccess(response.getStatus())) {
+                Log.e(TAG, "Error in downloadUrl - " + data + " " + response.getStatus());
+                return null;
             }
+            return response.getContent();
+        } catch (InterruptedException e) {
+            // The task was cancelled
+            request.abort(e);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "Error in downloadUrl - " + data + e);
         }
 
-        return bytes;
+        return null;
     }
 }
@@ -0,0 +1,198 @@
+package uk.org.ngo.squeezer.util;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs image tasks in order of priority.
+ * <p>
+ * Artwork for what is playing now goes first, then artwork for visible views, and prefetches
+ * last. Within the visible priority the newest task goes first, so during a fast scroll the rows
+ * now on screen are loaded before the rows which were scrolled past. Other priorities are served
+ * in the order they were submitted.
+ * <p>
+ * Cancelled tasks are left in the queue until {@link #purge()} is called, or until a thread
+ * reaches them, and they finish immediately. Callers report cancelled tasks with
+ * {@link #onCancelled()}, and the queue is purged on one of the threads of the scheduler once a few
+ * have built up.
+ */
+public class ImageScheduler {
+
+    @IntDef({PRIORITY_NOW_PLAYING, PRIORITY_VISIBLE, PRIORITY_PREFETCH})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {}
+    public static final int PRIORITY_NOW_PLAYING = 0;
+    public static final int PRIORITY_VISIBLE = 1;
+    public static final int PRIORITY_PREFETCH = 2;
+    private static final int PRIORITIES = 3;
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /** Number of cancelled tasks reported before the queue is purged */
+    static final int PURGE_THRESHOLD = 16;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /** Sequence number of the latest task, to order tasks of the same priority */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /** Number of queued tasks, by priority */
+    private final AtomicInteger[] mQueued = new AtomicInteger[PRIORITIES];
+
+    /** Largest number of queued tasks seen, by priority */
+    private final AtomicInteger[] mMaxQueued = new AtomicInteger[PRIORITIES];
+
+    /** Number of cancelled tasks removed from the queue by {@link #purge()} */
+    private final AtomicInteger mPurged = new AtomicInteger();
+
+    /** Number of cancelled tasks reached by a thread before they were purged */
+    private final AtomicInteger mSkipped = new AtomicInteger();
+
+    /** Number of cancelled tasks reported since the last purge, which may still be queued */
+    private final AtomicInteger mCancelled = new AtomicInteger();
+
+    /** Set while a purge is queued */
+    private final AtomicBoolean mPurgeQueued = new AtomicBoolean();
+
+    /**
+     * @param threads Number of threads to run tasks on
+     */
+    ImageScheduler(int threads) {
+        for (int i = 0; i < PRIORITIES; i++) {
+            mQueued[i] = new AtomicInteger();
+            mMaxQueued[i] = new AtomicInteger();
+        }
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, "ImageScheduler #" + mCount.getAndIncrement());
+            }
+        };
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), threadFactory);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return An executor which runs tasks with the supplied priority.
+     */
+    @NonNull
+    public Executor executor(@Priority final int priority) {
+        return command -> {
+            int queued = mQueued[priority].incrementAndGet();
+            AtomicInteger maxQueued = mMaxQueued[priority];
+            int max = maxQueued.get();
+            while (queued > max && !maxQueued.compareAndSet(max, queued)) {
+                max = maxQueued.get();
+            }
+            mExecutor.execute(new Task(command, priority, mSequence.incrementAndGet()));
+        };
+    }
+
+    /**
+     * Report that a task run by this scheduler was cancelled. When {@link #PURGE_THRESHOLD}
+     * cancelled tasks have been reported, a {@link #purge()} is queued ahead of the image tasks, so
+     * the caller, typically the UI thread, doesn't scan the queue.
+     */
+    public void onCancelled() {
+        if (mCancelled.incrementAndGet() >= PURGE_THRESHOLD && mPurgeQueued.compareAndSet(false, true)) {
+            executor(PRIORITY_NOW_PLAYING).execute(() -> {
+                mPurgeQueued.set(false);
+                purge();
+            });
+        }
+    }
+
+    /**
+     * Remove cancelled tasks from the queue, so they don't hold up the queue or count in the queue
+     * depths.
+     */
+    public void purge() {
+        // Tasks cancelled from now on may be missed by this purge, so they are counted for the next
+        mCancelled.set(0);
+        BlockingQueue<Runnable> queue = mExecutor.getQueue();
+        for (Runnable runnable : queue.toArray(new Runnable[0])) {
+            Task task = (Task) runnable;
+            // A thread may have taken the task meanwhile
+            if (task.isCancelled() && queue.remove(task)) {
+                mQueued[task.mPriority].decrementAndGet();
+                mPurged.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return Number of queued tasks of the supplied priority.
+     */
+    public int getQueueDepth(@Priority int priority) {
+        return mQueued[priority].get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "ImageScheduler{queued now-playing=%d (max %d), visible=%d (max %d), prefetch=%d (max %d), purged=%d, skipped=%d}",
+                mQueued[PRIORITY_NOW_PLAYING].get(), mMaxQueued[PRIORITY_NOW_PLAYING].get(),
+                mQueued[PRIORITY_VISIBLE].get(), mMaxQueued[PRIORITY_VISIBLE].get(),
+                mQueued[PRIORITY_PREFETCH].get(), mMaxQueued[PRIORITY_PREFETCH].get(),
+                mPurged.get(), mSkipped.get());
+    }
+
+    private class Task implements Runnable, Comparable<Task> {
+        private final Runnable mCommand;
+        private final int mPriority;
+        private final long mSequence;
+
+        Task(Runnable command, int priority, long sequence) {
+            mCommand = command;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        boolean isCancelled() {
+            return (mCommand instanceof Future && ((Future<?>) mCommand).isCancelled());
+        }
+
+        @Override
+        public void run() {
+            mQueued[mPriority].decrementAndGet();
+            if (isCancelled()) {
+                // Finishes immediately, and is no longer waiting to be purged
+                mSkipped.incrementAndGet();
+                int cancelled = mCancelled.get();
+                while (cancelled > 0 && !mCancelled.compareAndSet(cancelled, cancelled - 1)) {
+                    cancelled = mCancelled.get();
+                }
+            }
+            mCommand.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mPriority != other.mPriority) {
+                return (mPriority < other.mPriority ? -1 : 1);
+            }
+            // Newest first for visible views, oldest first otherwise
+            int order = Long.compare(mSequence, other.mSequence);
+            return (mPriority == PRIORITY_VISIBLE ? -order : order);
+        }
+    }
+}
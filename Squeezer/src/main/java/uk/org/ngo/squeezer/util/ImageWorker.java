@@ -53,6 +53,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import uk.org.ngo.squeezer.BuildConfig;
 import uk.org.ngo.squeezer.Util;
@@ -92,6 +94,27 @@ public abstract class ImageWorker {
     private static final int MESSAGE_CLOSE = 3;
     private static final int MESSAGE_CLEAR_MEMORY_CACHE = 4;
 
+    /** Downloads in progress, by URL */
+    private final SingleFlight<String, byte[]> mFetches = new SingleFlight<>();
+
+    /**
+     * Runs the image tasks. Downloads are mostly waiting for the network, so there are more
+     * threads than cores on small devices.
+     */
+    private static final ImageScheduler sScheduler = new ImageScheduler(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Decodes in progress, by memory cache key */
+    private final SingleFlight<String, Bitmap> mDecodes = new SingleFlight<>();
+
+    /**
+     * Bitmaps from the image cache displayed by image views. Each holds a reference to the bitmap,
+     * which is released when the view loads another image. Only accessed on the UI thread.
+     */
+    private final Map<ImageView, Bitmap> mDisplayedBitmaps = new WeakHashMap<>();
+
     /** Paint to use when colouring debug swatches on images. */
     private static final Paint mCacheDebugPaint = new Paint();
 
@@ -121,6 +144,19 @@ public abstract class ImageWorker {
      * @param callback Will be called once an image is set on the view.
      */
     public void loadImage(final Object data, final ImageView imageView, LoadImageCallback callback) {
+        loadImage(data, imageView, ImageScheduler.PRIORITY_VISIBLE, callback);
+    }
+
+    /**
+     * Like {@link #loadImage(Object, ImageView, LoadImageCallback)} but with an explicit priority.
+     *
+     * @param data The URL of the image to download
+     * @param imageView The ImageView to bind the downloaded image to
+     * @param priority Priority of the image compared to other images being loaded
+     * @param callback Will be called once an image is set on the view.
+     */
+    public void loadImage(final Object data, final ImageView imageView,
+                          @ImageScheduler.Priority int priority, LoadImageCallback callback) {
         if (data == null) {
             return;
         }
@@ -145,7 +181,7 @@ public abstract class ImageWorker {
                     imageView.getViewTreeObserver().removeOnPreDrawListener(this);
                     // If the imageView is still assigned to the URL then we can load in to it.
                     if (data.equals(imageView.getTag())) {
-                        loadImage(data, imageView, callback);
+                        loadImage(data, imageView, priority, callback);
                     }
                     return true;
                 }
@@ -153,7 +189,7 @@ public abstract class ImageWorker {
             return;
         }
 
-        loadImage(data, imageView, width, height, callback);
+        loadImage(data, imageView, width, height, priority, callback);
     }
 
     /**
@@ -173,11 +209,16 @@ public abstract class ImageWorker {
      * @param callback Will be called once an image is set on the view.
      */
     public void loadImage(final Object data, final ImageView imageView, int width, int height, LoadImageCallback callback) {
+        loadImage(data, imageView, width, height, ImageScheduler.PRIORITY_VISIBLE, callback);
+    }
+
+    private void loadImage(final Object data, final ImageView imageView, int width, int height,
+                           @ImageScheduler.Priority int priority, LoadImageCallback callback) {
         Bitmap bitmap = null;
         String memCacheKey = hashKeyForMemory(String.valueOf(data), width, height);
 
         if (mImageCache != null) {
-            bitmap = mImageCache.getBitmapFromMemCache(memCacheKey);
+            bitmap = mImageCache.acquireBitmapFromMemCache(memCacheKey);
         }
 
         if (bitmap != null) {
@@ -186,6 +227,7 @@ public abstract class ImageWorker {
                 addDebugSwatch(new Canvas(bitmap), mCacheDebugColorMemory);
             }
             imageView.setImageBitmap(bitmap);
+            setDisplayedBitmap(imageView, bitmap);
             if (callback != null) {
                 callback.onDone();
             }
@@ -194,11 +236,16 @@ public abstract class ImageWorker {
             final AsyncDrawable asyncDrawable =
                     new AsyncDrawable(mResources, mLoadingBitmap, task);
             imageView.setImageDrawable(asyncDrawable);
+            setDisplayedBitmap(imageView, null);
+
+            // Set the data now, so the task isn't cancelled if the view is bound to the same image
+            // again while the task is queued.
+            task.data = data;
 
             // NOTE: This uses a custom version of AsyncTask that has been pulled from the
             // framework and slightly modified. Refer to the docs at the top of the class
             // for more info on what was changed.
-            task.executeOnExecutor(AsyncTask.DUAL_THREAD_EXECUTOR,
+            task.executeOnExecutor(sScheduler.executor(priority),
                     new BitmapWorkerTaskParams(width, height, data, memCacheKey));
         }
     }
@@ -252,7 +299,7 @@ public abstract class ImageWorker {
         } else {
             final CallbackBitmapWorkerTask task = new CallbackBitmapWorkerTask(callback);
 
-            task.executeOnExecutor(AsyncTask.DUAL_THREAD_EXECUTOR,
+            task.executeOnExecutor(sScheduler.executor(ImageScheduler.PRIORITY_NOW_PLAYING),
                     new BitmapWorkerTaskParams(width, height, data, memCacheKey));
         }
     }
@@ -296,11 +343,35 @@ public abstract class ImageWorker {
             // NOTE: This uses a custom version of AsyncTask that has been pulled from the
             // framework and slightly modified. Refer to the docs at the top of the class
             // for more info on what was changed.
-            task.executeOnExecutor(AsyncTask.DUAL_THREAD_EXECUTOR,
+            task.executeOnExecutor(sScheduler.executor(ImageScheduler.PRIORITY_NOW_PLAYING),
                     new BitmapWorkerTaskParams(width, height, data, memCacheKey));
         }
     }
 
+    /**
+     * Load an image in to the memory cache, so it is ready when it is shown. The image is loaded
+     * after all other images.
+     *
+     * @param data The URL of the image to download
+     * @param width Width of the view the image will be shown in
+     * @param height Height of the view the image will be shown in
+     */
+    public void prefetchImage(final Object data, int width, int height) {
+        if (data == null || width <= 0 || height <= 0 || mImageCache == null) {
+            return;
+        }
+
+        String memCacheKey = hashKeyForMemory(String.valueOf(data), width, height);
+        Bitmap bitmap = mImageCache.acquireBitmapFromMemCache(memCacheKey);
+        if (bitmap != null) {
+            mImageCache.releaseBitmap(bitmap);
+            return;
+        }
+
+        new PrefetchBitmapWorkerTask().executeOnExecutor(sScheduler.executor(ImageScheduler.PRIORITY_PREFETCH),
+                new BitmapWorkerTaskParams(width, height, data, memCacheKey));
+    }
+
     /**
      * Generates a hash key for the memory cache. The key includes the target width and height,
      * so that multiple copies of the image may exist in the cache at different sizes.
@@ -423,6 +494,22 @@ public abstract class ImageWorker {
      */
     protected abstract byte[] processBitmap(BitmapWorkerTaskParams params);
 
+    /**
+     * Subclasses can override this to fetch a version of the image closer to the size it is
+     * displayed at, if the source of the image supports it.
+     *
+     * @param data The identifier of the image
+     * @param width The width the image is displayed at
+     * @param height The height the image is displayed at
+     *
+     * @return The identifier of the image at about the requested size. The default implementation
+     * returns <code>data</code>.
+     */
+    @NonNull
+    protected Object getSizedData(@NonNull Object data, int width, int height) {
+        return data;
+    }
+
     /**
      * Cancels any pending work attached to the provided ImageView.
      *
@@ -432,6 +519,7 @@ public abstract class ImageWorker {
         final BitmapWorkerTask bitmapWorkerTask = getBitmapWorkerTask(imageView);
         if (bitmapWorkerTask != null) {
             bitmapWorkerTask.cancel(true);
+            sScheduler.onCancelled();
             if (BuildConfig.DEBUG) {
                 final Object bitmapData = bitmapWorkerTask.data;
                 Log.d(TAG, "cancelWork - cancelled work for " + bitmapData);
@@ -451,6 +539,7 @@ public abstract class ImageWorker {
             final Object bitmapData = bitmapWorkerTask.data;
             if (bitmapData == null || !bitmapData.equals(data)) {
                 bitmapWorkerTask.cancel(true);
+                sScheduler.onCancelled();
                 if (BuildConfig.DEBUG) {
                     Log.d(TAG, "cancelPotentialWork - cancelled work for " + data);
                 }
@@ -494,12 +583,20 @@ public abstract class ImageWorker {
         @NonNull
         public final String memCacheKey;
 
+        /**
+         * Identifier to fetch the bitmap at about the desired size with, and to store the fetched
+         * bytes in the disk cache under.
+         */
+        @NonNull
+        public final Object sizedData;
+
         public BitmapWorkerTaskParams(int width, int height,
                                       @NonNull Object data, @NonNull String memCacheKey) {
             this.width = width;
             this.height = height;
             this.data = data;
             this.memCacheKey = memCacheKey;
+            this.sizedData = getSizedData(data, width, height);
         }
 
         @Override
@@ -508,6 +605,7 @@ public abstract class ImageWorker {
                     "width=" + width +
                     ", height=" + height +
                     ", data=" + data +
+                    ", sizedData=" + sizedData +
                     ", memCacheKey='" + memCacheKey + '\'' +
                     '}';
         }
@@ -533,9 +631,10 @@ public abstract class ImageWorker {
     /**
      * The actual AsyncTask that will asynchronously process the image.
      */
-    private class BitmapWorkerTask extends AsyncTask<BitmapWorkerTaskParams, Void, Bitmap> {
+    private abstract class BitmapWorkerTask extends AsyncTask<BitmapWorkerTaskParams, Void, Bitmap> {
         protected static final String TAG = "BitmapWorkerTask";
         protected Object data;
+        protected String memCacheKey;
 
         /**
          * Background processing.
@@ -546,12 +645,9 @@ public abstract class ImageWorker {
                 Log.d(TAG, "doInBackground - starting work");
             }
 
-            boolean loadedFromNetwork = false;
-
             data = params[0].data;
-            final String dataString = String.valueOf(data);
-            byte[] bytes = null;
-            Bitmap scaledBitmap = null;
+            memCacheKey = params[0].memCacheKey;
+            final String dataString = String.valueOf(params[0].sizedData);
 
             // Wait here if work is paused and the task is not cancelled
             synchronized (mPauseWorkLock) {
@@ -563,40 +659,140 @@ public abstract class ImageWorker {
                 }
             }
 
-            // If the image cache is available and this task has not been cancelled by another
-            // thread and there's nothing to indicate this task should cancel then try and fetch
-            // the bitmap bytes from the cache.
-            if (mImageCache != null && !isCancelled() && !shouldCancel()) {
-                bytes = mImageCache.getBytesFromDiskCache(dataString);
+            // Tasks for the same image at the same size share one decode, and tasks for the same
+            // image share one download. A task which finds the decode of its image running
+            // doesn't wait for it, the bitmap is delivered to it when the decode completes.
+            boolean[] decoded = new boolean[1];
+            mDecodes.load(memCacheKey, new SingleFlight.Loader<Bitmap>() {
+                @Override
+                public Bitmap load() {
+                    decoded[0] = true;
+                    return decodeBitmap(params[0], dataString);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return BitmapWorkerTask.this.isCancelled() || shouldCancel();
+                }
+            }, bitmap -> {
+                // The task which decoded the bitmap holds a reference to it, the others take
+                // their own. If the bitmap was released and reused for another image in the
+                // meantime, decode it again.
+                if (bitmap != null && !decoded[0] && mImageCache != null
+                        && !mImageCache.retainBitmap(memCacheKey, bitmap)) {
+                    bitmap = decodeBitmap(params[0], dataString);
+                }
+                deliver(bitmap);
+            });
+
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "doInBackground - finished work");
             }
 
-            // If the bitmap was not found in the cache and this task has not been cancelled by
-            // another thread and there's nothing to indicate that this task should cancel, then
-            // call the main process method (as implemented by a subclass)
-            if ((bytes == null || bytes.length == 0) && !isCancelled() && !shouldCancel()) {
-                bytes = processBitmap(params[0]);
-                loadedFromNetwork = true;
+            // The bitmap is delivered by the decode
+            return null;
+        }
 
-                // If the bitmap bytes were loaded then add them to the disk cache.
-                if (bytes != null && bytes.length != 0 && mImageCache != null) {
-                    mImageCache.addBytesToDiskCache(dataString, bytes);
+        /**
+         * Pass the bitmap to {@link #onBitmapLoaded(Bitmap)} on the main thread, or release it if
+         * the task was cancelled, as {@link AsyncTask} does with the result of
+         * {@link #doInBackground(BitmapWorkerTaskParams...)}.
+         */
+        private void deliver(@Nullable Bitmap bitmap) {
+            sMainHandler.post(() -> {
+                if (isCancelled()) {
+                    releaseBitmap(bitmap);
+                } else {
+                    onBitmapLoaded(bitmap);
                 }
+            });
+        }
+
+        /**
+         * Called on the main thread with the loaded bitmap, or null if it could not be loaded.
+         */
+        protected abstract void onBitmapLoaded(@Nullable Bitmap bitmap);
+
+        /**
+         * Get the bytes of the image, and decode them at the requested size.
+         *
+         * @return The bitmap, with a reference for the caller to release if there is an image cache
+         */
+        @Nullable
+        private Bitmap decodeBitmap(BitmapWorkerTaskParams params, String dataString) {
+            // Another task may have just finished decoding this image
+            if (mImageCache != null) {
+                Bitmap bitmap = mImageCache.acquireBitmapFromMemCache(params.memCacheKey);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+            }
+
+            // A copy of the image scaled to this size may be in the disk cache, otherwise get the
+            // whole image.
+            byte[] bytes = null;
+            if (mImageCache != null && !isCancelled() && !shouldCancel()) {
+                bytes = mImageCache.getBytesFromDiskCache(params.memCacheKey);
+            }
+            final boolean prescaled = (bytes != null && bytes.length != 0);
+
+            boolean[] loadedFromNetwork = new boolean[1];
+            if (!prescaled) {
+                bytes = mFetches.get(dataString, new SingleFlight.Loader<byte[]>() {
+                    @Override
+                    public byte[] load() {
+                        return fetchBytes(params, dataString, loadedFromNetwork);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return BitmapWorkerTask.this.isCancelled() || shouldCancel();
+                    }
+                });
             }
+            Bitmap scaledBitmap = null;
+            boolean downscaled = false;
 
             // Create a bitmap from the bytes, scaled to the appropriate size.
-            if (bytes != null && bytes.length != 0 && params[0].width > 0 && params[0].height > 0) {
+            if (bytes != null && bytes.length != 0 && params.width > 0 && params.height > 0) {
                 BitmapFactory.Options options = new BitmapFactory.Options();
                 options.inJustDecodeBounds = true;
                 BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
 
                 options.inSampleSize = calculateInSampleSize(
-                        options, params[0].width, params[0].height);
+                        options, params.width, params.height);
+                downscaled = (options.inSampleSize > 1);
 
                 options.inJustDecodeBounds = false;
 
-                // Create a mutable bitmap so it can be post processed.
+                // Create a mutable bitmap so it can be post processed, and reused when it is no
+                // longer displayed or cached. Decode into such a bitmap if there is one, so
+                // scrolling through artwork doesn't allocate a bitmap for each image.
                 options.inMutable = true;
-                scaledBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+                if (mImageCache != null) {
+                    options.inBitmap = mImageCache.getReusableBitmap(options);
+                }
+                try {
+                    scaledBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+                } catch (IllegalArgumentException e) {
+                    // The bitmap to reuse was too small after all
+                    options.inBitmap = null;
+                    scaledBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+                }
+            }
+
+            // If the image was scaled down, store the scaled copy on disk, so the next time it is
+            // not in the memory cache only the small copy is decoded.
+            if (scaledBitmap != null && downscaled && !prescaled && mImageCache != null) {
+                mImageCache.addBitmapToDiskCache(params.memCacheKey, scaledBitmap);
+            }
+
+            if (BuildConfig.DEBUG && scaledBitmap != null) {
+                if (loadedFromNetwork[0]) {
+                    addDebugSwatch(new Canvas(scaledBitmap), mCacheDebugColorNetwork);
+                } else {
+                    addDebugSwatch(new Canvas(scaledBitmap), mCacheDebugColorDisk);
+                }
             }
 
             // If the bitmap was processed and the image cache is available, then add the processed
@@ -604,22 +800,40 @@ public abstract class ImageWorker {
             // cancelled here, if it was, and the thread is still running, we may as well add the
             // processed bitmap to our cache as it might be used again in the future.
             if (scaledBitmap != null && mImageCache != null) {
-                mImageCache.addBitmapToMemoryCache(params[0].memCacheKey, scaledBitmap);
+                mImageCache.addBitmapToMemoryCache(params.memCacheKey, scaledBitmap, true);
             }
 
-            if (BuildConfig.DEBUG) {
-                Log.d(TAG, "doInBackground - finished work");
+            return scaledBitmap;
+        }
+
+        /**
+         * Get the bytes of the image from the disk cache, or if not there, from the network.
+         */
+        @Nullable
+        private byte[] fetchBytes(BitmapWorkerTaskParams params, String dataString, boolean[] loadedFromNetwork) {
+            byte[] bytes = null;
+
+            // If the image cache is available and this task has not been cancelled by another
+            // thread and there's nothing to indicate this task should cancel then try and fetch
+            // the bitmap bytes from the cache.
+            if (mImageCache != null && !isCancelled() && !shouldCancel()) {
+                bytes = mImageCache.getBytesFromDiskCache(dataString);
             }
 
-            if (BuildConfig.DEBUG && scaledBitmap != null) {
-                if (loadedFromNetwork) {
-                    addDebugSwatch(new Canvas(scaledBitmap), mCacheDebugColorNetwork);
-                } else {
-                    addDebugSwatch(new Canvas(scaledBitmap), mCacheDebugColorDisk);
-                }
+            // If the bitmap was not found in the cache and this task has not been cancelled by
+            // another thread and there's nothing to indicate that this task should cancel, then
+            // call the main process method (as implemented by a subclass)
+            if ((bytes == null || bytes.length == 0) && !isCancelled() && !shouldCancel()) {
+                bytes = processBitmap(params);
+                loadedFromNetwork[0] = true;
 
+                // If the bitmap bytes were loaded then add them to the disk cache.
+                if (bytes != null && bytes.length != 0 && mImageCache != null) {
+                    mImageCache.addBytesToDiskCache(dataString, bytes);
+                }
             }
-            return scaledBitmap;
+
+            return bytes;
         }
 
         /**
@@ -674,6 +888,7 @@ public abstract class ImageWorker {
         @Override
         protected void onCancelled(Bitmap bitmap) {
             super.onCancelled(bitmap);
+            releaseBitmap(bitmap);
             synchronized (mPauseWorkLock) {
                 mPauseWorkLock.notifyAll();
             }
@@ -707,7 +922,7 @@ public abstract class ImageWorker {
          * Once the image is processed, associates it to the imageView
          */
         @Override
-        protected void onPostExecute(Bitmap bitmap) {
+        protected void onBitmapLoaded(Bitmap bitmap) {
             // if cancel was called on this task or the "exit early" flag is set then we're done
             if (isCancelled() || mExitTasksEarly) {
                 bitmap = null;
@@ -716,9 +931,11 @@ public abstract class ImageWorker {
             final ImageView imageView = getAttachedImageView();
             if (bitmap != null && imageView != null) {
                 if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "onPostExecute - setting bitmap");
+                    Log.d(TAG, "onBitmapLoaded - setting bitmap");
                 }
                 setImageBitmap(imageView, bitmap, callback);
+            } else {
+                releaseBitmap(bitmap);
             }
         }
 
@@ -743,6 +960,17 @@ public abstract class ImageWorker {
 
     }
 
+    /**
+     * A specialisation of {@link BitmapWorkerTask} that only loads the bitmap in to the memory
+     * cache.
+     */
+    private class PrefetchBitmapWorkerTask extends BitmapWorkerTask {
+        @Override
+        protected void onBitmapLoaded(Bitmap bitmap) {
+            releaseBitmap(bitmap);
+        }
+    }
+
     /**
      * A specialisation of {@link BitmapWorkerTask} that passed the loaded bitmap to a callback
      * for further processing.
@@ -757,13 +985,14 @@ public abstract class ImageWorker {
         }
 
         @Override
-        protected void onPostExecute(Bitmap bitmap) {
-            Log.d(TAG, "callback: onPostExecute()");
+        protected void onBitmapLoaded(Bitmap bitmap) {
+            Log.d(TAG, "callback: onBitmapLoaded()");
+            bitmap = pinBitmap(memCacheKey, bitmap);
             if (isCancelled() || shouldCancel()) {
                 bitmap = null;
             }
 
-            Log.d(TAG, "onPostExecute - setting bitmap");
+            Log.d(TAG, "onBitmapLoaded - setting bitmap");
             mCallback.process(data, bitmap);
         }
 
@@ -799,10 +1028,11 @@ public abstract class ImageWorker {
         }
 
         @Override
-        protected void onPostExecute(Bitmap bitmap) {
+        protected void onBitmapLoaded(Bitmap bitmap) {
+            bitmap = pinBitmap(memCacheKey, bitmap);
             if (bitmap != null) {
                 if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "onPostExecute - setting bitmap");
+                    Log.d(TAG, "onBitmapLoaded - setting bitmap");
                 }
                 Log.d(TAG, "Setting notification bitmap");
                 mRemoteViews.setImageViewBitmap(mViewId, bitmap);
@@ -849,6 +1079,7 @@ public abstract class ImageWorker {
      * @param bitmap
      */
     private void setImageBitmap(ImageView imageView, Bitmap bitmap, LoadImageCallback callback) {
+        setDisplayedBitmap(imageView, bitmap);
         if (mFadeInBitmap) {
             Drawable currentDrawable = imageView.getDrawable();
             Drawable newDrawable = new BitmapDrawable(mResources, bitmap);
@@ -881,6 +1112,38 @@ public abstract class ImageWorker {
         }
     }
 
+    /**
+     * Record the bitmap an image view now displays, and release the bitmap it displayed before.
+     *
+     * @param bitmap The bitmap, with a reference which is now held by the view, or null
+     */
+    private void setDisplayedBitmap(ImageView imageView, @Nullable Bitmap bitmap) {
+        Bitmap previous = (bitmap != null ? mDisplayedBitmaps.put(imageView, bitmap) : mDisplayedBitmaps.remove(imageView));
+        releaseBitmap(previous);
+    }
+
+    private void releaseBitmap(@Nullable Bitmap bitmap) {
+        if (bitmap != null && mImageCache != null) {
+            mImageCache.releaseBitmap(bitmap);
+        }
+    }
+
+    /**
+     * Keep a bitmap which is handed to code that doesn't release it from being reused, and release
+     * the reference held by the task which loaded it.
+     *
+     * @return The bitmap, or null if it can't be used.
+     */
+    @Nullable
+    private Bitmap pinBitmap(String memCacheKey, @Nullable Bitmap bitmap) {
+        if (bitmap == null || mImageCache == null) {
+            return bitmap;
+        }
+        boolean pinned = mImageCache.pinBitmap(memCacheKey, bitmap);
+        mImageCache.releaseBitmap(bitmap);
+        return (pinned ? bitmap : null);
+    }
+
     public void setPauseWork(boolean pauseWork) {
         synchronized (mPauseWorkLock) {
             mPauseWork = pauseWork;
@@ -938,6 +1201,9 @@ public abstract class ImageWorker {
         if (mImageCache != null) {
             mImageCache.flush();
         }
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, sScheduler.toString());
+        }
     }
 
     protected void closeCacheInternal() {
@@ -0,0 +1,190 @@
+package uk.org.ngo.squeezer.util;
+
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.B64Code;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import uk.org.ngo.squeezer.R;
+import uk.org.ngo.squeezer.Squeezer;
+import uk.org.ngo.squeezer.service.SqueezerBayeuxExtension;
+
+/**
+ * The HTTP client shared by everything which talks HTTP to the server or fetches artwork, so they
+ * all use one pool of kept alive connections.
+ * <p>
+ * Credentials for the server are added to each request to the server, instead of being answered
+ * for any host which asks, as a VM-wide {@link java.net.Authenticator} would.
+ * <p>
+ * Artwork is often on other hosts than the server, e.g. from plugins and radio services, and those
+ * are usually reached with https, so the client connects to https URLs too.
+ * <p>
+ * Artwork downloads are limited to fewer connections per host than the client has, so the
+ * requests and commands published to the server are not queued behind artwork.
+ */
+public class SharedHttpClient {
+    private static final String TAG = "SharedHttpClient";
+
+    /** Time in milliseconds to wait for a connection to be established */
+    private static final long CONNECT_TIMEOUT = 15_000;
+
+    /** Maximum number of threads of the client, for I/O and for completing requests */
+    private static final int MAX_THREADS = 16;
+
+    /** Number of connections per host which artwork downloads leave for other requests */
+    private static final int RESERVED_CONNECTIONS = 2;
+
+    private volatile static SharedHttpClient sInstance;
+
+    private final HttpClient mHttpClient;
+
+    /** Maximum number of artwork downloads from a host at a time */
+    private final int mArtworkConnections;
+
+    /** Permits for artwork downloads, by host and port */
+    private final Map<String, Semaphore> mArtworkPermits = new ConcurrentHashMap<>();
+
+    @Nullable
+    private volatile Credentials mCredentials;
+
+    private SharedHttpClient() {
+        QueuedThreadPool executor = new QueuedThreadPool(MAX_THREADS, 2);
+        executor.setName(TAG);
+        executor.setDaemon(true);
+
+        mHttpClient = newHttpClient(newSslContextFactory());
+        mHttpClient.setExecutor(executor);
+        mHttpClient.setUserAgentField(new HttpField(HttpHeader.USER_AGENT, "Squeezer-squeezer/" + SqueezerBayeuxExtension.getRevision()));
+        int connections = Squeezer.getInstance().getResources().getInteger(R.integer.HttpConnectionsPerHost);
+        mHttpClient.setMaxConnectionsPerDestination(connections);
+        mArtworkConnections = Math.max(1, connections - RESERVED_CONNECTIONS);
+    }
+
+    /**
+     * @return A client which connects to http and https URLs, with the TLS settings of the
+     * supplied factory, and follows redirects between them.
+     */
+    @NonNull
+    static HttpClient newHttpClient(@NonNull SslContextFactory sslContextFactory) {
+        HttpClient httpClient = new HttpClient(sslContextFactory);
+        httpClient.setConnectTimeout(CONNECT_TIMEOUT);
+        httpClient.setFollowRedirects(true);
+        return httpClient;
+    }
+
+    /**
+     * @return TLS settings which trust the certificates the system trusts, and, where the platform
+     * supports it, check that the certificate is for the host, as {@link java.net.HttpURLConnection}
+     * does.
+     */
+    @NonNull
+    private static SslContextFactory newSslContextFactory() {
+        SslContextFactory sslContextFactory = new SslContextFactory(false);
+        sslContextFactory.setEndpointIdentificationAlgorithm(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? "HTTPS" : null);
+        return sslContextFactory;
+    }
+
+    @NonNull
+    public static SharedHttpClient getInstance() {
+        SharedHttpClient result = sInstance;
+        if (result == null) {
+            synchronized (SharedHttpClient.class) {
+                result = sInstance;
+                if (result == null) {
+                    sInstance = result = new SharedHttpClient();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The client, started if it wasn't already.
+     *
+     * @throws Exception If the client could not be started.
+     */
+    @NonNull
+    public synchronized HttpClient getHttpClient() throws Exception {
+        if (!mHttpClient.isStarted()) {
+            Log.i(TAG, "Starting, max connections per host: " + mHttpClient.getMaxConnectionsPerDestination());
+            mHttpClient.start();
+        }
+        return mHttpClient;
+    }
+
+    /**
+     * @return A new request for the supplied URL, with credentials if it is for the server.
+     */
+    @NonNull
+    public Request newRequest(@NonNull String url) throws Exception {
+        return authorize(getHttpClient().newRequest(url));
+    }
+
+    /**
+     * Send a request for artwork and wait for the response. If the maximum number of artwork
+     * downloads from the host is reached, wait for one of them to complete first.
+     *
+     * @param maxSize Maximum size of the content in bytes
+     */
+    @NonNull
+    public ContentResponse sendArtworkRequest(@NonNull Request request, int maxSize) throws InterruptedException, ExecutionException {
+        Semaphore permits = mArtworkPermits.computeIfAbsent(request.getHost() + ':' + request.getPort(),
+                key -> new Semaphore(mArtworkConnections));
+        permits.acquire();
+        try {
+            FutureResponseListener listener = new FutureResponseListener(request, maxSize);
+            request.send(listener);
+            return listener.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Set the credentials to send with requests to the server, or null if it doesn't need any.
+     */
+    public void setCredentials(@NonNull String host, int port, @Nullable String username, @Nullable String password) {
+        mCredentials = (username != null && password != null) ? new Credentials(host, port, username, password) : null;
+    }
+
+    /**
+     * Add the credentials to the request if it is for the server. The client doesn't pass them on
+     * if the request is redirected.
+     */
+    @NonNull
+    public Request authorize(@NonNull Request request) {
+        Credentials credentials = mCredentials;
+        if (credentials != null && credentials.host.equalsIgnoreCase(request.getHost()) && credentials.port == request.getPort()) {
+            request.header(HttpHeader.AUTHORIZATION, credentials.authorization);
+        }
+        return request;
+    }
+
+    private static class Credentials {
+        final String host;
+        final int port;
+        final String authorization;
+
+        Credentials(String host, int port, String username, String password) {
+            this.host = host;
+            this.port = port;
+            this.authorization = "Basic " + B64Code.encode(username + ":" + password);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package uk.org.ngo.squeezer.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Makes concurrent loads of the same key share one load.
+ * <p>
+ * The first caller to ask for a key runs the loader on its thread. Callers asking for the same key
+ * while it is running are added to the load and return at once, so they don't hold a thread while
+ * they wait. When the load completes the result is passed to the callbacks of all the callers, on
+ * the thread which ran the load, and the key is forgotten, so results are not cached here.
+ * <p>
+ * If the loader gives up because its caller was cancelled, the load is handed to the next waiting
+ * caller, whose loader is run in its place. If the load fails, all callers get null.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the results
+ */
+class SingleFlight<K, V> {
+    private final ConcurrentMap<K, Flight<V>> mInFlight = new ConcurrentHashMap<>();
+
+    interface Loader<V> {
+        @Nullable
+        V load();
+
+        /**
+         * @return True if the caller no longer wants the result, so a null result from
+         * {@link #load()} means the load was given up rather than failed.
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    interface Callback<V> {
+        void onResult(@Nullable V result);
+    }
+
+    private static class Waiter<V> {
+        final Loader<V> loader;
+        final Callback<V> callback;
+
+        Waiter(Loader<V> loader, Callback<V> callback) {
+            this.loader = loader;
+            this.callback = callback;
+        }
+    }
+
+    private static class Flight<V> {
+        /** Callers waiting for the result, guarded by this */
+        final List<Waiter<V>> waiters = new ArrayList<>();
+        /** Set when the result is being passed to the waiters, guarded by this */
+        boolean done;
+    }
+
+    /**
+     * Run the loader for the supplied key on this thread, or if a load of the same key is already
+     * running, add the callback to it and return at once.
+     *
+     * @return True if the load ran on this thread, so the callback has been called, false if the
+     * callback will be called on the thread running the load.
+     */
+    boolean load(@NonNull K key, @NonNull Loader<V> loader, @NonNull Callback<V> callback) {
+        Flight<V> flight = new Flight<>();
+        Flight<V> running;
+        while ((running = mInFlight.putIfAbsent(key, flight)) != null) {
+            synchronized (running) {
+                if (!running.done) {
+                    running.waiters.add(new Waiter<>(loader, callback));
+                    return false;
+                }
+            }
+            // The running load completed and was removed, try again
+        }
+
+        run(key, flight, new Waiter<>(loader, callback));
+        return true;
+    }
+
+    /**
+     * Run the loader for the supplied key, or wait for the load of the same key which is already
+     * running. Unlike {@link #load(Object, Loader, Callback)} this holds the thread while it waits,
+     * so use it only where the caller can't continue without the result.
+     *
+     * @return The result of the load, or null if the load failed or this thread was interrupted
+     * while waiting.
+     */
+    @Nullable
+    V get(@NonNull K key, @NonNull Loader<V> loader) {
+        List<V> result = new ArrayList<>(1);
+        CountDownLatch done = new CountDownLatch(1);
+        load(key, loader, value -> {
+            result.add(value);
+            done.countDown();
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return result.get(0);
+    }
+
+    private void run(K key, Flight<V> flight, Waiter<V> owner) {
+        V result;
+        List<Waiter<V>> waiters;
+        while (true) {
+            try {
+                result = owner.loader.load();
+            } catch (RuntimeException e) {
+                result = null;
+            }
+
+            Waiter<V> cancelled = null;
+            synchronized (flight) {
+                if (result == null && owner.loader.isCancelled() && !flight.waiters.isEmpty()) {
+                    // Hand the load to the next caller, rather than fail it for all of them
+                    cancelled = owner;
+                    owner = flight.waiters.remove(0);
+                    waiters = null;
+                } else {
+                    mInFlight.remove(key, flight);
+                    flight.done = true;
+                    waiters = new ArrayList<>(flight.waiters);
+                    flight.waiters.clear();
+                }
+            }
+            if (cancelled == null) {
+                break;
+            }
+            cancelled.callback.onResult(null);
+        }
+
+        owner.callback.onResult(result);
+        for (Waiter<V> waiter : waiters) {
+            waiter.callback.onResult(result);
+        }
+    }
+
+    /** @return Number of loads currently running */
+    int size() {
+        return mInFlight.size();
+    }
+}
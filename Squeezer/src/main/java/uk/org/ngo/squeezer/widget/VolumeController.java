@@ -24,6 +24,7 @@ import uk.org.ngo.squeezer.dialog.VolumeSettings;
 import uk.org.ngo.squeezer.framework.BaseActivity;
 import uk.org.ngo.squeezer.framework.BottomSheetDialogFragmentWithService;
 import uk.org.ngo.squeezer.service.ISqueezeService;
+import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
 import uk.org.ngo.squeezer.service.event.PlayerVolume;
 import uk.org.ngo.squeezer.service.event.PlayersChanged;
 
@@ -124,6 +125,13 @@ public class VolumeController extends BottomSheetDialogFragmentWithService imple
         }
     }
 
+    @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
+    public void onEvent(PlayerStateChanged event) {
+        if (event.changed(PlayerStateChanged.VOLUME) && service != null && event.player == service.getActivePlayer()) {
+            showVolumeChanged();
+        }
+    }
+
     public static void show(BaseActivity activity) {
         VolumeController volumeController = new VolumeController();
         volumeController.show(activity.getSupportFragmentManager(), TAG);
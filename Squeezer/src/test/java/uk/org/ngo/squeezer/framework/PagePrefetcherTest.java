@@ -0,0 +1,56 @@
+package uk.org.ngo.squeezer.framework;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class PagePrefetcherTest extends TestCase {
+
+    public void testNoPrefetchWhenNotMoving() {
+        PagePrefetcher prefetcher = new PagePrefetcher(100, 3);
+        prefetcher.onScrolled(50, 0);
+        assertEquals(0, prefetcher.getPagesToPrefetch(50, 60, 1000).length);
+    }
+
+    public void testLookAheadFollowsVelocityAndFetchTime() {
+        PagePrefetcher prefetcher = new PagePrefetcher(100, 3);
+        prefetcher.onPageOrdered(0, 0);
+        prefetcher.onPageReceived(0, 500);
+        assertEquals(500, prefetcher.getFetchTime());
+
+        // 0.1 row/ms for 500 ms is less than a page
+        prefetcher.onScrolled(0, 1000);
+        prefetcher.onScrolled(10, 1100);
+        assertEquals(1, prefetcher.getDirection());
+        assertTrue(Arrays.equals(new int[]{100}, prefetcher.getPagesToPrefetch(10, 20, 1000)));
+
+        // A fling is limited to the maximum number of pages, and the end of the list
+        prefetcher.onScrolled(210, 1200);
+        prefetcher.onScrolled(410, 1300);
+        assertEquals(3, prefetcher.getLookAheadPages());
+        assertTrue(Arrays.equals(new int[]{500, 600}, prefetcher.getPagesToPrefetch(410, 420, 650)));
+    }
+
+    public void testScrollUp() {
+        PagePrefetcher prefetcher = new PagePrefetcher(100, 3);
+        prefetcher.onScrolled(550, 0);
+        prefetcher.onScrolled(540, 100);
+        assertEquals(-1, prefetcher.getDirection());
+        assertTrue(Arrays.equals(new int[]{400}, prefetcher.getPagesToPrefetch(540, 550, 1000)));
+
+        assertTrue(prefetcher.isPassed(700, 540, 550));
+        assertFalse(prefetcher.isPassed(600, 540, 550));
+        assertFalse(prefetcher.isPassed(300, 540, 550));
+    }
+
+    public void testPassedPagesWhenScrollingDown() {
+        PagePrefetcher prefetcher = new PagePrefetcher(100, 3);
+        prefetcher.onScrolled(300, 0);
+        prefetcher.onScrolled(310, 100);
+        assertTrue(prefetcher.isPassed(100, 310, 320));
+        assertFalse(prefetcher.isPassed(200, 310, 320));
+
+        prefetcher.onScrollStopped();
+        assertFalse(prefetcher.isPassed(100, 310, 320));
+    }
+}
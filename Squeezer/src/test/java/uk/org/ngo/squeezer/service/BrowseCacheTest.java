@@ -0,0 +1,94 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BrowseCacheTest extends TestCase {
+    private static final String SERVER = "http://192.168.1.2:9000";
+    private static final List<String> ALBUMS = Collections.singletonList("albums");
+
+    private File directory;
+    private BrowseCache cache;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("browse").toFile();
+        cache = new BrowseCache(directory, 1024 * 1024);
+        cache.setLibraryState("1600000000", false);
+    }
+
+    @Override
+    protected void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testKeyIgnoresOrderOfParams() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("artist_id", "12");
+        params.put("tags", "aljJ");
+        Map<String, Object> reversed = new LinkedHashMap<>();
+        reversed.put("tags", "aljJ");
+        reversed.put("artist_id", "12");
+
+        String key = cache.getKey(SERVER, ALBUMS, params, 0, 200);
+        assertNotNull(key);
+        assertEquals(key, cache.getKey(SERVER, ALBUMS, reversed, 0, 200));
+        assertFalse("Pages have different keys", key.equals(cache.getKey(SERVER, ALBUMS, params, 200, 200)));
+    }
+
+    public void testUncacheableRequests() {
+        Map<String, Object> none = Collections.emptyMap();
+        assertNull("Not a library command", cache.getKey(SERVER, Arrays.asList("radios"), none, 0, 200));
+        assertNull("No command", cache.getKey(SERVER, Collections.<String>emptyList(), none, 0, 200));
+        assertNull("Uncacheable mode", cache.getKey(SERVER, Arrays.asList("browselibrary", "items"),
+                Collections.<String, Object>singletonMap("mode", "playlists"), 0, 200));
+        assertNull("Random order", cache.getKey(SERVER, ALBUMS,
+                Collections.<String, Object>singletonMap("sort", "random"), 0, 200));
+    }
+
+    public void testLibraryState() {
+        Map<String, Object> params = Collections.emptyMap();
+        String key = cache.getKey(SERVER, ALBUMS, params, 0, 200);
+
+        cache.setLibraryState("1600000001", false);
+        String rescanned = cache.getKey(SERVER, ALBUMS, params, 0, 200);
+        assertNotNull(rescanned);
+        assertFalse("A rescan changes the key", key.equals(rescanned));
+
+        cache.setLibraryState("1600000001", true);
+        assertNull("Bypassed while scanning", cache.getKey(SERVER, ALBUMS, params, 0, 200));
+
+        cache.setLibraryState(null, false);
+        assertNull("Bypassed until the last scan is known", cache.getKey(SERVER, ALBUMS, params, 0, 200));
+    }
+
+    public void testStats() {
+        String key = cache.getKey(SERVER, ALBUMS, new HashMap<String, Object>(), 0, 200);
+
+        assertNull(cache.get(key));
+        cache.put(key, "{\"count\":0}");
+        assertEquals("{\"count\":0}", cache.get(key));
+        assertEquals("{\"count\":0}", cache.get(key));
+
+        BrowseCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.hits);
+        assertEquals(1, stats.misses);
+        assertEquals(1, stats.puts);
+        assertTrue(stats.size > 0);
+    }
+}
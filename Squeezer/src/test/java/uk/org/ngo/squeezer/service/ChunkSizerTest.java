@@ -0,0 +1,38 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+public class ChunkSizerTest extends TestCase {
+
+    public void testChunksGrowUpToPageSize() {
+        ChunkSizer chunkSizer = new ChunkSizer(32, 512, 300);
+        assertEquals(32, chunkSizer.firstChunk(0));
+        assertEquals(128, chunkSizer.nextChunk(32));
+        assertEquals(512, chunkSizer.nextChunk(128));
+        assertEquals(512, chunkSizer.nextChunk(512));
+        assertEquals("Later pages start larger", 128, chunkSizer.firstChunk(512));
+    }
+
+    public void testSlowItemsGiveSmallerChunks() {
+        ChunkSizer chunkSizer = new ChunkSizer(32, 512, 300);
+        chunkSizer.onResponse(32, 100);
+        // 2 ms per item after the latency
+        chunkSizer.onResponse(128, 356);
+        assertEquals(100, chunkSizer.getLatency(), 0.1);
+        assertEquals(2, chunkSizer.getItemTime(), 0.1);
+        assertEquals(150, chunkSizer.nextChunk(128));
+    }
+
+    public void testHighLatencyGivesLargerChunks() {
+        ChunkSizer chunkSizer = new ChunkSizer(32, 512, 300);
+        chunkSizer.onResponse(32, 1000);
+        chunkSizer.onResponse(128, 1256);
+        assertEquals(500, chunkSizer.nextChunk(128));
+    }
+
+    public void testFirstChunkIsLimitedByPageSize() {
+        ChunkSizer chunkSizer = new ChunkSizer(32, 16, 300);
+        assertEquals(16, chunkSizer.firstChunk(0));
+        assertEquals(16, chunkSizer.nextChunk(16));
+    }
+}
@@ -0,0 +1,172 @@
+package uk.org.ngo.squeezer.service;
+
+import org.cometd.bayeux.client.ClientSessionChannel;
+import org.cometd.client.BayeuxClient;
+import org.eclipse.jetty.client.HttpClient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests through the client side of the Comet stack ({@link SqueezerBayeuxClient},
+ * {@link HttpStreamingTransport} and the Jetty HTTP client) the way {@link CometClient} does, and
+ * measures how long each request takes until its result arrives on its response channel.
+ * <p>
+ * Allocations are measured per thread, for threads which are not server threads, so they include
+ * the client threads of the cometd and Jetty libraries. Threads which end during the run are not
+ * counted. Allocations are only measured if the JVM supports it.
+ */
+class CometLoadDriver {
+    private final String mUrl;
+
+    /** Publish time in nanoseconds of the requests waiting for their result, by response channel */
+    private final Map<String, Long> mPending = new ConcurrentHashMap<>();
+
+    CometLoadDriver(String url) {
+        mUrl = url;
+    }
+
+    /**
+     * Send <code>requests</code> requests, with at most <code>concurrency</code> requests waiting
+     * for their result at any time.
+     */
+    Result run(int requests, int concurrency, long timeoutMillis) throws Exception {
+        HttpClient httpClient = new HttpClient();
+        httpClient.start();
+        SqueezerBayeuxClient client = new SqueezerBayeuxClient(mUrl, new HttpStreamingTransport(mUrl, null, httpClient));
+        try {
+            client.handshake();
+            if (!client.waitFor(timeoutMillis, BayeuxClient.State.CONNECTED)) {
+                throw new IllegalStateException("Not connected to " + mUrl);
+            }
+            return run(client, requests, concurrency, timeoutMillis);
+        } finally {
+            client.disconnect(1000);
+            httpClient.stop();
+        }
+    }
+
+    private Result run(SqueezerBayeuxClient client, int requests, int concurrency, long timeoutMillis) throws InterruptedException {
+        String responseChannel = "/" + client.getId() + "/slim/request/";
+        Semaphore window = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+        long[] latencies = new long[requests];
+        AtomicInteger responses = new AtomicInteger();
+
+        client.getChannel(responseChannel + "*").subscribe((ClientSessionChannel.MessageListener) (channel, message) -> {
+            Long sent = mPending.remove(message.getChannel());
+            if (sent != null) {
+                latencies[responses.getAndIncrement()] = System.nanoTime() - sent;
+                window.release();
+                done.countDown();
+            }
+        });
+
+        Map<Long, Long> allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            if (!window.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                break;
+            }
+            String channel = responseChannel + i;
+            Map<String, Object> data = new HashMap<>();
+            data.put("request", Arrays.asList("", Collections.singletonList("loadtest:" + i)));
+            data.put("response", channel);
+            mPending.put(channel, System.nanoTime());
+            client.getChannel("/slim/request").publish(data);
+        }
+        done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        long duration = System.nanoTime() - start;
+        long allocated = allocatedSince(allocatedBefore);
+
+        int received = responses.get();
+        return new Result(requests, received, duration, Arrays.copyOf(latencies, received), allocated);
+    }
+
+    /** @return Bytes allocated so far by each client thread, by thread id, if supported. */
+    private static Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> allocated = new HashMap<>();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return allocated;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+            return allocated;
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().startsWith(FakeLmsServer.THREAD_PREFIX)) {
+                long bytes = bean.getThreadAllocatedBytes(thread.getId());
+                if (bytes >= 0) {
+                    allocated.put(thread.getId(), bytes);
+                }
+            }
+        }
+        return allocated;
+    }
+
+    /** @return Bytes allocated by client threads since <code>before</code>, or -1 if unknown. */
+    private static long allocatedSince(Map<Long, Long> before) {
+        Map<Long, Long> after = allocatedBytes();
+        if (after.isEmpty()) {
+            return -1;
+        }
+        long allocated = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long previous = before.get(entry.getKey());
+            allocated += entry.getValue() - (previous != null ? previous : 0);
+        }
+        return allocated;
+    }
+
+    static class Result {
+        final int requests;
+        final int responses;
+        final long durationNanos;
+        /** Sorted latencies of the answered requests, in nanoseconds */
+        final long[] latencies;
+        /** Bytes allocated by client threads, -1 if unknown */
+        final long allocatedBytes;
+
+        private Result(int requests, int responses, long durationNanos, long[] latencies, long allocatedBytes) {
+            this.requests = requests;
+            this.responses = responses;
+            this.durationNanos = durationNanos;
+            this.latencies = latencies;
+            this.allocatedBytes = allocatedBytes;
+            Arrays.sort(this.latencies);
+        }
+
+        /** @return The latency in milliseconds which <code>percent</code> of the requests stayed within. */
+        double percentile(double percent) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percent / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+
+        /** @return Answered requests per second. */
+        double throughput() {
+            return durationNanos > 0 ? responses * 1e9 / durationNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "Result{responses=%d of %d, throughput=%.0f/s, latency p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms, allocated=%s}",
+                    responses, requests, throughput(), percentile(50), percentile(90), percentile(99), percentile(100),
+                    allocatedBytes >= 0 ? (allocatedBytes / Math.max(1, responses)) + " bytes/request" : "unknown");
+        }
+    }
+}
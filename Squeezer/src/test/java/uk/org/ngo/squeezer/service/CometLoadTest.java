@@ -0,0 +1,49 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs the Comet client stack against {@link FakeLmsServer}.
+ * <p>
+ * By default the load is small, so the test can run with the other unit tests. For a benchmark,
+ * raise the load with system properties, e.g.
+ * <code>./gradlew :Squeezer:testDebugUnitTest --tests '*CometLoadTest*' -Dloadtest.requests=100000
+ * -Dloadtest.concurrency=32 -Dloadtest.latency=2 -Dloadtest.items=100</code>, and look for the
+ * results in the test's standard output.
+ */
+public class CometLoadTest extends TestCase {
+    private static final int REQUESTS = Integer.getInteger("loadtest.requests", 200);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 8);
+    private static final int LATENCY = Integer.getInteger("loadtest.latency", 1);
+    private static final int ITEMS = Integer.getInteger("loadtest.items", 10);
+    private static final int ITEM_SIZE = Integer.getInteger("loadtest.itemSize", 32);
+    private static final long TIMEOUT = 10_000 + REQUESTS * 10L;
+
+    private FakeLmsServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = FakeLmsServer.builder()
+                .latency(LATENCY)
+                .items(ITEMS)
+                .itemSize(ITEM_SIZE)
+                .build();
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop();
+        super.tearDown();
+    }
+
+    public void testAllRequestsAreAnswered() throws Exception {
+        CometLoadDriver.Result result = new CometLoadDriver(server.getUrl()).run(REQUESTS, CONCURRENCY, TIMEOUT);
+        System.out.println("CometLoadTest: " + result);
+
+        assertEquals(REQUESTS, result.responses);
+        assertEquals(REQUESTS, server.getRequests());
+        assertTrue(result.percentile(50) >= LATENCY);
+    }
+}
@@ -0,0 +1,44 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class EventCoalescerTest extends TestCase {
+
+    public void testEventsForSameKeyAreMerged() {
+        EventCoalescer<String, Integer> coalescer = new EventCoalescer<>((pending, event) -> pending | event);
+        coalescer.add("a", 1);
+        coalescer.add("b", 4);
+        coalescer.add("a", 2);
+
+        assertEquals(Arrays.asList(3, 4), coalescer.drain());
+        assertEquals(Collections.emptyList(), coalescer.drain());
+    }
+
+    public void testLatestEventWins() {
+        EventCoalescer<String, String> coalescer = new EventCoalescer<>((pending, event) -> event);
+        coalescer.add("player", "volume 10");
+        coalescer.add("player", "volume 20");
+
+        assertEquals(Collections.singletonList("volume 20"), coalescer.drain());
+    }
+
+    public void testStats() {
+        EventCoalescer<String, Integer> coalescer = new EventCoalescer<>(Integer::sum);
+        coalescer.add("a", 1);
+        coalescer.add("a", 1);
+        coalescer.add("b", 1);
+        coalescer.drain();
+        coalescer.drain();
+        coalescer.add("a", 1);
+        coalescer.drain();
+
+        EventCoalescer.Stats stats = coalescer.getStats();
+        assertEquals(4, stats.posted);
+        assertEquals(3, stats.delivered);
+        assertEquals(2, stats.deliveries);
+        assertEquals(2, stats.maxPending);
+    }
+}
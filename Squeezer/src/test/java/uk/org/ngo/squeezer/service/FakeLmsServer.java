@@ -0,0 +1,466 @@
+package uk.org.ngo.squeezer.service;
+
+import org.eclipse.jetty.util.ajax.JSON;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for LMS which speaks enough of its Bayeux (cometd) dialect to drive
+ * {@link HttpStreamingTransport} and the cometd client on a plain JVM.
+ * <p>
+ * Like LMS, the server answers <code>/meta/handshake</code> with a plain response, and
+ * <code>/meta/connect</code> with a chunked response which stays open. Everything the server
+ * pushes to the client afterwards, including the replies to later <code>/meta/subscribe</code>
+ * messages on the same connection, is sent as a chunk of that response. <code>/slim/request</code>,
+ * <code>/slim/subscribe</code> and <code>/slim/unsubscribe</code> messages arrive as ordinary
+ * HTTP requests; they are acknowledged in the HTTP response, and the result of the request is
+ * pushed on the response channel the client supplied, after {@link Builder#latency(int)}.
+ * <p>
+ * Like LMS, the server keeps a session and its subscriptions when its streaming connection is
+ * lost, so the client can continue it with a <code>/meta/connect</code> on a new connection.
+ * Connections can be dropped with {@link #dropConnections()}, and sessions forgotten with
+ * {@link #forgetSessions()}.
+ * <p>
+ * Results are synthetic: <code>status</code> requests get a player status, and any other request
+ * gets a list of {@link Builder#items(int)} items, each with a text of
+ * {@link Builder#itemSize(int)} characters, so payload sizes can be varied.
+ * <p>
+ * Threads of the server are named with the prefix {@link #THREAD_PREFIX}, so they can be told
+ * apart from client threads.
+ */
+class FakeLmsServer {
+    static final String THREAD_PREFIX = "FakeLms";
+
+    private static final JSON JSON = new JSON();
+
+    private final int mLatency;
+    private final int mItems;
+    private final int mItemSize;
+    private final int mStatusInterval;
+
+    private final AtomicInteger mThreadCount = new AtomicInteger();
+    private final ExecutorService mConnections = Executors.newCachedThreadPool(
+            r -> new Thread(r, THREAD_PREFIX + " connection #" + mThreadCount.incrementAndGet()));
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, THREAD_PREFIX + " scheduler"));
+
+    /** Client ids of the sessions the server knows */
+    private final Set<String> mClients = ConcurrentHashMap.newKeySet();
+
+    /** Streaming connections, by client id */
+    private final Map<String, Connection> mSessions = new ConcurrentHashMap<>();
+
+    /** Periodic pushes of subscriptions, by response channel */
+    private final Map<String, ScheduledFuture<?>> mSubscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger mClientIds = new AtomicInteger();
+    private final AtomicInteger mHandshakes = new AtomicInteger();
+    private final AtomicInteger mConnects = new AtomicInteger();
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mPushes = new AtomicInteger();
+
+    private ServerSocket mServerSocket;
+
+    private FakeLmsServer(Builder builder) {
+        mLatency = builder.latency;
+        mItems = builder.items;
+        mItemSize = builder.itemSize;
+        mStatusInterval = builder.statusInterval;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+        private int latency;
+        private int items = 10;
+        private int itemSize = 32;
+        private int statusInterval;
+
+        /** Time in milliseconds from a request to the push of its result */
+        Builder latency(int latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /** Number of items in the result of a request */
+        Builder items(int items) {
+            this.items = items;
+            return this;
+        }
+
+        /** Number of characters in the text of each item */
+        Builder itemSize(int itemSize) {
+            this.itemSize = itemSize;
+            return this;
+        }
+
+        /** Interval in milliseconds between player status pushes to subscribers, 0 for none */
+        Builder statusInterval(int statusInterval) {
+            this.statusInterval = statusInterval;
+            return this;
+        }
+
+        FakeLmsServer build() {
+            return new FakeLmsServer(this);
+        }
+    }
+
+    /** Start listening on a free port of the loopback interface. */
+    void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        mConnections.execute(() -> {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    Socket socket = mServerSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    mConnections.execute(new Connection(socket));
+                } catch (IOException e) {
+                    // Closed
+                }
+            }
+        });
+    }
+
+    void stop() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        for (Connection connection : mSessions.values()) {
+            connection.close();
+        }
+        mScheduler.shutdownNow();
+        mConnections.shutdownNow();
+    }
+
+    String getUrl() {
+        return "http://" + mServerSocket.getInetAddress().getHostAddress() + ":" + mServerSocket.getLocalPort() + "/cometd";
+    }
+
+    /** Close the streaming connections, as if the network was lost. The sessions are kept. */
+    void dropConnections() {
+        for (Connection connection : mSessions.values()) {
+            connection.close();
+        }
+    }
+
+    /** Forget all sessions, as if they expired, so clients have to make a new handshake. */
+    void forgetSessions() {
+        mClients.clear();
+        for (String responseChannel : mSubscriptions.keySet()) {
+            unsubscribe(responseChannel);
+        }
+    }
+
+    /** @return Number of <code>/meta/handshake</code> messages received. */
+    int getHandshakes() {
+        return mHandshakes.get();
+    }
+
+    /** @return Number of <code>/meta/connect</code> messages received. */
+    int getConnects() {
+        return mConnects.get();
+    }
+
+    /** @return Number of <code>/slim/</code> requests received. */
+    int getRequests() {
+        return mRequests.get();
+    }
+
+    /** @return Number of messages pushed to clients. */
+    int getPushes() {
+        return mPushes.get();
+    }
+
+    private class Connection implements Runnable {
+        private final Socket mSocket;
+        private OutputStream mOutput;
+
+        /** Whether the connection carries a chunked streaming response */
+        private boolean mStreaming;
+
+        private Connection(Socket socket) {
+            mSocket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputStream input = new BufferedInputStream(mSocket.getInputStream());
+                mOutput = mSocket.getOutputStream();
+                String body;
+                while ((body = readRequest(input)) != null) {
+                    List<Map<String, Object>> replies = new ArrayList<>();
+                    for (Object message : (Object[]) JSON.fromJSON(body)) {
+                        replies.add(handle((Map<String, Object>) message));
+                    }
+                    send(replies);
+                }
+            } catch (IOException e) {
+                // Client went away
+            } finally {
+                close();
+            }
+        }
+
+        private Map<String, Object> handle(Map<String, Object> message) {
+            String channel = (String) message.get("channel");
+            Map<String, Object> reply = new HashMap<>();
+            reply.put("channel", channel);
+            reply.put("id", message.get("id"));
+            reply.put("successful", true);
+
+            switch (channel) {
+                case "/meta/handshake": {
+                    String clientId = Integer.toHexString(0x1000 + mClientIds.incrementAndGet());
+                    mHandshakes.incrementAndGet();
+                    mClients.add(clientId);
+                    reply.put("clientId", clientId);
+                    reply.put("version", "1.0");
+                    reply.put("supportedConnectionTypes", new String[]{"streaming"});
+                    reply.put("advice", advice());
+                    break;
+                }
+                case "/meta/connect": {
+                    mConnects.incrementAndGet();
+                    String clientId = (String) message.get("clientId");
+                    reply.put("clientId", clientId);
+                    if (!mClients.contains(clientId)) {
+                        reply.put("successful", false);
+                        reply.put("error", "402::Unknown client");
+                        Map<String, Object> advice = advice();
+                        advice.put("reconnect", "handshake");
+                        reply.put("advice", advice);
+                        break;
+                    }
+                    reply.put("advice", advice());
+                    startStreaming();
+                    mSessions.put(clientId, this);
+                    break;
+                }
+                case "/meta/subscribe":
+                    reply.put("subscription", message.get("subscription"));
+                    break;
+                case "/meta/disconnect": {
+                    String clientId = (String) message.get("clientId");
+                    mClients.remove(clientId);
+                    mSessions.remove(clientId);
+                    for (String responseChannel : mSubscriptions.keySet()) {
+                        if (responseChannel.startsWith("/" + clientId + "/")) {
+                            unsubscribe(responseChannel);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    mRequests.incrementAndGet();
+                    onSlimMessage((String) message.get("clientId"), channel, (Map<String, Object>) message.get("data"));
+                    break;
+            }
+            return reply;
+        }
+
+        private synchronized void startStreaming() {
+            if (!mStreaming) {
+                mStreaming = true;
+                try {
+                    write(("HTTP/1.1 200 OK\r\n" +
+                            "Content-Type: application/json\r\n" +
+                            "Transfer-Encoding: chunked\r\n" +
+                            "\r\n").getBytes(StandardCharsets.US_ASCII));
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        /** Send messages as a response, or as a chunk if the connection is streaming. */
+        synchronized void send(List<Map<String, Object>> messages) throws IOException {
+            byte[] content = JSON.toJSON(messages).getBytes(StandardCharsets.UTF_8);
+            if (mStreaming) {
+                write((Integer.toHexString(content.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                write(content);
+                write("\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else {
+                write(("HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: application/json\r\n" +
+                        "Content-Length: " + content.length + "\r\n" +
+                        "\r\n").getBytes(StandardCharsets.US_ASCII));
+                write(content);
+            }
+            mOutput.flush();
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            mOutput.write(bytes);
+        }
+
+        void close() {
+            mSessions.values().remove(this);
+            try {
+                mSocket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static Map<String, Object> advice() {
+        Map<String, Object> advice = new HashMap<>();
+        advice.put("reconnect", "retry");
+        advice.put("interval", 0);
+        advice.put("timeout", 60000);
+        return advice;
+    }
+
+    private void onSlimMessage(String clientId, String channel, Map<String, Object> data) {
+        if ("/slim/unsubscribe".equals(channel)) {
+            unsubscribe((String) data.get("unsubscribe"));
+            return;
+        }
+        String responseChannel = (String) data.get("response");
+        Object[] request = (Object[]) data.get("request");
+        String playerId = (String) request[0];
+        Object[] cmd = (Object[]) request[1];
+
+        mScheduler.schedule(() -> push(clientId, responseChannel, result(playerId, cmd, 0)), mLatency, TimeUnit.MILLISECONDS);
+        if ("/slim/subscribe".equals(channel) && mStatusInterval > 0) {
+            AtomicInteger updates = new AtomicInteger();
+            ScheduledFuture<?> updater = mScheduler.scheduleAtFixedRate(() -> push(clientId, responseChannel, result(playerId, cmd, updates.incrementAndGet())),
+                    mLatency + mStatusInterval, mStatusInterval, TimeUnit.MILLISECONDS);
+            // A new subscription to the same channel replaces the previous one, as in LMS
+            ScheduledFuture<?> previous = mSubscriptions.put(responseChannel, updater);
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        }
+    }
+
+    /** Stop the periodic pushes to the supplied response channel. */
+    private void unsubscribe(String responseChannel) {
+        ScheduledFuture<?> updater = (responseChannel != null ? mSubscriptions.remove(responseChannel) : null);
+        if (updater != null) {
+            updater.cancel(false);
+        }
+    }
+
+    private void push(String clientId, String channel, Map<String, Object> data) {
+        Connection connection = mSessions.get(clientId);
+        if (connection == null) {
+            return;
+        }
+        Map<String, Object> message = new HashMap<>();
+        message.put("channel", channel);
+        message.put("data", data);
+        try {
+            connection.send(Arrays.asList(message));
+            mPushes.incrementAndGet();
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @param update Number of status updates pushed before this one for a subscription
+     */
+    private Map<String, Object> result(String playerId, Object[] cmd, int update) {
+        Map<String, Object> result = new HashMap<>();
+        if (cmd.length > 0 && "status".equals(cmd[0])) {
+            result.put("player_name", "Player " + playerId);
+            result.put("power", 1);
+            result.put("mode", "play");
+            result.put("time", update);
+            result.put("duration", 300);
+            result.put("mixer volume", 50);
+            result.put("playlist_timestamp", 1);
+            result.put("playlist_tracks", mItems);
+            result.put("playlist_cur_index", 0);
+            result.put("item_loop", items(1));
+        } else {
+            result.put("count", mItems);
+            result.put("item_loop", items(mItems));
+        }
+        return result;
+    }
+
+    private Object[] items(int count) {
+        char[] text = new char[mItemSize];
+        Arrays.fill(text, 'x');
+        Object[] items = new Object[count];
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", String.format(Locale.ROOT, "%d", i));
+            item.put("text", new String(text));
+            items[i] = item;
+        }
+        return items;
+    }
+
+    /**
+     * Read a request, and return its body, or null if the client closed the connection.
+     */
+    private static String readRequest(InputStream input) throws IOException {
+        String line = readLine(input);
+        if (line == null) {
+            return null;
+        }
+        int contentLength = 0;
+        while ((line = readLine(input)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            return null;
+        }
+
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int n = input.read(body, read, contentLength - read);
+            if (n < 0) {
+                return null;
+            }
+            read += n;
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) >= 0) {
+            if (b == '\n') {
+                return line.toString("US-ASCII").trim();
+            }
+            line.write(b);
+        }
+        return (line.size() > 0 ? line.toString("US-ASCII") : null);
+    }
+}
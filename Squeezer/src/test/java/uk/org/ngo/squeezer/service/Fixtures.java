@@ -0,0 +1,45 @@
+package uk.org.ngo.squeezer.service;
+
+import org.eclipse.jetty.util.ajax.JSON;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Access to the LMS responses in <code>src/test/resources/fixtures</code>. Each fixture is the
+ * JSON array of Bayeux messages, as LMS sends it.
+ */
+class Fixtures {
+    static final String PLAYER_STATUS = "playerstatus.json";
+    static final String BROWSE_ALBUMS = "browse_albums.json";
+    static final String TITLES = "titles.json";
+
+    private Fixtures() {
+    }
+
+    /** @return The text of the fixture. */
+    static String read(String name) throws IOException {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream("fixtures/" + name)) {
+            if (in == null) {
+                throw new IOException("No fixture " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+
+    /** @return The data of the first message of the fixture, parsed like the client does. */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> data(String name) throws IOException {
+        Object[] messages = (Object[]) new JSON().fromJSON(read(name));
+        return (Map<String, Object>) ((Map<String, Object>) messages[0]).get("data");
+    }
+}
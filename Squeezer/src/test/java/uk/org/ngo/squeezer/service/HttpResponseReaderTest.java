@@ -0,0 +1,103 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+public class HttpResponseReaderTest extends TestCase {
+
+    private static HttpResponseReader reader(String response) {
+        return new HttpResponseReader(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void testContentLengthIsInBytes() throws IOException, ParseException {
+        String json = "[{\"title\":\"Sigur Rós – Ágætis byrjun\"}]";
+        int length = json.getBytes(StandardCharsets.UTF_8).length;
+        HttpResponseReader reader = reader("HTTP/1.1 200 OK\r\n" +
+                "content-type: application/json\r\n" +
+                "Content-Length: " + length + "\r\n" +
+                "\r\n" + json +
+                "HTTP/1.1 500 Internal Server Error\r\n\r\n");
+
+        assertEquals(200, reader.readResponseHead());
+        assertFalse(reader.isChunked());
+        assertEquals(length, reader.getContentLength());
+
+        JsonStreamSplitter splitter = new JsonStreamSplitter();
+        reader.readContent(reader.getContentLength(), splitter);
+        assertEquals(json, splitter.next());
+
+        assertEquals(500, reader.readResponseHead());
+        assertEquals(0, reader.getContentLength());
+    }
+
+    public void testChunkedWithSplitCharacter() throws IOException, ParseException {
+        byte[] json = "[{\"artist\":\"Björk\"}]".getBytes(StandardCharsets.UTF_8);
+        // Split the two byte UTF-8 sequence for 'ö' between two chunks
+        int split = 15;
+        assertEquals((byte) 0xC3, json[split - 1]);
+
+        byte[] head = ("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                Integer.toHexString(split) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] middle = ("\r\n" + Integer.toHexString(json.length - split) + ";ext=1\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = "\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] response = new byte[head.length + json.length + middle.length + tail.length];
+        int pos = 0;
+        System.arraycopy(head, 0, response, pos, head.length);
+        System.arraycopy(json, 0, response, pos += head.length, split);
+        System.arraycopy(middle, 0, response, pos += split, middle.length);
+        System.arraycopy(json, split, response, pos += middle.length, json.length - split);
+        System.arraycopy(tail, 0, response, pos + json.length - split, tail.length);
+
+        HttpResponseReader reader = new HttpResponseReader(new OneByteInputStream(response));
+        assertEquals(200, reader.readResponseHead());
+        assertTrue(reader.isChunked());
+
+        JsonStreamSplitter splitter = new JsonStreamSplitter();
+        int chunkSize;
+        while ((chunkSize = reader.readChunkSize()) > 0) {
+            reader.readContent(chunkSize, splitter);
+            reader.readChunkEnd();
+        }
+        reader.readTrailers();
+        assertEquals("[{\"artist\":\"Björk\"}]", splitter.next());
+    }
+
+    public void testEndOfStream() throws IOException {
+        HttpResponseReader reader = reader("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n[]");
+        assertEquals(200, reader.readResponseHead());
+        try {
+            reader.readContent(reader.getContentLength(), new JsonStreamSplitter());
+            fail("Expected EOFException");
+        } catch (EOFException e) {
+            // Expected
+        }
+    }
+
+    /** Deliver one byte per read, like a slow network */
+    private static class OneByteInputStream extends InputStream {
+        private final byte[] data;
+        private int pos;
+
+        private OneByteInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= data.length) return -1;
+            b[off] = data[pos++];
+            return 1;
+        }
+    }
+}
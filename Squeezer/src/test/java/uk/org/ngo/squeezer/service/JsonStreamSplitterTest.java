@@ -0,0 +1,53 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.text.ParseException;
+
+public class JsonStreamSplitterTest extends TestCase {
+
+    public void testValueSplitOverChunks() throws ParseException {
+        JsonStreamSplitter splitter = new JsonStreamSplitter();
+        splitter.append("[{\"channel\":\"/slim/");
+        assertNull(splitter.next());
+        assertTrue(splitter.hasPartial());
+
+        splitter.append("request\",\"data\":{}}]");
+        assertEquals("[{\"channel\":\"/slim/request\",\"data\":{}}]", splitter.next());
+        assertFalse(splitter.hasPartial());
+        assertNull(splitter.next());
+    }
+
+    public void testSeveralValuesInOneChunk() throws ParseException {
+        JsonStreamSplitter splitter = new JsonStreamSplitter();
+        splitter.append("[{\"id\":\"1\"}]\r\n[{\"id\":\"2\"}][{\"id\"");
+
+        assertEquals("[{\"id\":\"1\"}]", splitter.next());
+        assertEquals("[{\"id\":\"2\"}]", splitter.next());
+        assertNull(splitter.next());
+
+        splitter.append(":\"3\"}]");
+        assertEquals("[{\"id\":\"3\"}]", splitter.next());
+    }
+
+    public void testBracketsInStrings() throws ParseException {
+        JsonStreamSplitter splitter = new JsonStreamSplitter();
+        String json = "[{\"title\":\"Best of [disc 1] {live} \\\"]\\\\\"}]";
+        splitter.append(json.substring(0, 20));
+        assertNull(splitter.next());
+        splitter.append(json.substring(20));
+        assertEquals(json, splitter.next());
+    }
+
+    public void testGarbageBetweenValues() {
+        JsonStreamSplitter splitter = new JsonStreamSplitter();
+        splitter.append("[] x");
+        try {
+            assertEquals("[]", splitter.next());
+            splitter.next();
+            fail("Expected ParseException");
+        } catch (ParseException e) {
+            // Expected
+        }
+    }
+}
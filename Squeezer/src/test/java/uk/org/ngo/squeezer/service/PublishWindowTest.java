@@ -0,0 +1,73 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+public class PublishWindowTest extends TestCase {
+
+    public void testWindowLimitsPublishesInFlight() {
+        PublishWindow<String> window = new PublishWindow<>(2);
+        window.offer("a", false, 0);
+        window.offer("b", false, 0);
+        window.offer("c", false, 0);
+
+        assertEquals("a", window.poll(0));
+        assertEquals("b", window.poll(0));
+        assertNull(window.poll(0));
+        assertEquals(1, window.getQueueDepth());
+
+        assertTrue(window.complete("b", 10));
+        assertEquals("c", window.poll(10));
+        assertEquals(2, window.getInFlight());
+    }
+
+    public void testOrderedPublishIsBarrier() {
+        PublishWindow<String> window = new PublishWindow<>(4);
+        window.offer("query", false, 0);
+        window.offer("command", true, 0);
+        window.offer("next", false, 0);
+
+        assertEquals("query", window.poll(0));
+        assertNull("Ordered publish must wait for publishes in flight", window.poll(0));
+
+        window.complete("query", 5);
+        assertEquals("command", window.poll(5));
+        assertNull("Nothing is sent while an ordered publish is in flight", window.poll(5));
+
+        window.complete("command", 10);
+        assertEquals("next", window.poll(10));
+    }
+
+    public void testExpireFreesSlot() {
+        PublishWindow<String> window = new PublishWindow<>(1);
+        window.offer("a", false, 0);
+        window.offer("b", false, 0);
+
+        assertEquals("a", window.poll(0));
+        assertTrue(window.expire("a", 100));
+        assertFalse("A late response must not be counted", window.complete("a", 200));
+        assertEquals("b", window.poll(100));
+
+        PublishWindow.Stats stats = window.getStats();
+        assertEquals(1, stats.timedOut);
+        assertEquals(0, stats.completed);
+    }
+
+    public void testStats() {
+        PublishWindow<String> window = new PublishWindow<>(1);
+        window.offer("a", false, 0);
+        window.offer("b", false, 0);
+        window.poll(0);
+        window.complete("a", 40);
+        window.poll(40);
+        window.complete("b", 60);
+
+        PublishWindow.Stats stats = window.getStats();
+        assertEquals(2, stats.sent);
+        assertEquals(2, stats.completed);
+        assertEquals(2, stats.maxQueueDepth);
+        assertEquals(1, stats.maxInFlight);
+        assertEquals(20, stats.averageWaitTime());
+        assertEquals(40, stats.maxWaitTime);
+        assertEquals(30, stats.averageRoundTripTime());
+    }
+}
@@ -0,0 +1,130 @@
+package uk.org.ngo.squeezer.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import uk.org.ngo.squeezer.Squeezer;
+import uk.org.ngo.squeezer.Util;
+import uk.org.ngo.squeezer.model.JiveItem;
+import uk.org.ngo.squeezer.model.Song;
+import uk.org.ngo.squeezer.model.Window;
+
+/**
+ * Work done for every record of a message from the server: field access, and the construction of
+ * model objects.
+ * <p>
+ * These run against the android.jar stubs of the unit tests, where framework methods such as
+ * <code>Uri.parse</code> do nothing, so only the cost of our own code is measured. For the same
+ * reason {@link JiveItem} items with icons can't be constructed here, so the icons are removed
+ * from the browse records.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordBenchmark {
+    private Map<String, Object> status;
+    private Object[] titles;
+    private Map<String, Object> baseWindow;
+    private Map<String, Object> window;
+    private BaseListHandler<Song> songHandler;
+    private final List<Map<String, Object>> browseItems = new ArrayList<>();
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        // JiveItem's static items need the application
+        new Squeezer();
+
+        status = Fixtures.data(Fixtures.PLAYER_STATUS);
+        titles = (Object[]) Fixtures.data(Fixtures.TITLES).get("titles_loop");
+        Map<String, Object> browse = Fixtures.data(Fixtures.BROWSE_ALBUMS);
+        baseWindow = Util.getRecord(Util.getRecord(browse, "base"), "window");
+        window = Util.getRecord(browse, "window");
+        // As the records are passed to the items by the client
+        Map<String, Object> base = Util.getRecord(browse, "base");
+        for (Object item : (Object[]) browse.get("item_loop")) {
+            Map<String, Object> record = new HashMap<>((Map<String, Object>) item);
+            record.remove("icon-id");
+            record.remove("icon");
+            record.put("base", base);
+            browseItems.add(record);
+        }
+        songHandler = new BaseListHandler<Song>(Song.class) {};
+    }
+
+    /** The field access done for each player status message. */
+    @Benchmark
+    public void readStatusFields(Blackhole blackhole) {
+        blackhole.consume(Util.getInt(status, "power"));
+        blackhole.consume(Util.getString(status, "playlist shuffle"));
+        blackhole.consume(Util.getString(status, "playlist repeat"));
+        blackhole.consume(Util.getLong(status, "playlist_timestamp"));
+        blackhole.consume(Util.getInt(status, "playlist_tracks"));
+        blackhole.consume(Util.getInt(status, "playlist_cur_index"));
+        blackhole.consume(Util.getString(status, "playlist_name"));
+        blackhole.consume(Util.getInt(status, "will_sleep_in"));
+        blackhole.consume(Util.getInt(status, "sleep"));
+        blackhole.consume(Util.getInt(status, "remote"));
+        blackhole.consume(Util.getInt(status, "waitingToPlay"));
+        blackhole.consume(Util.getDouble(status, "rate"));
+        blackhole.consume(Util.getInt(status, "duration"));
+        blackhole.consume(Util.getDouble(status, "time"));
+        blackhole.consume(Util.getInt(status, "mixer volume"));
+        blackhole.consume(Util.getString(status, "sync_master"));
+        blackhole.consume(Util.getStringOrEmpty(status, "sync_slaves"));
+        blackhole.consume(Util.getString(status, "mode"));
+        blackhole.consume(Util.getRecord(status, "base"));
+    }
+
+    /** Create the songs of a page of a "titles" response. */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void parseSongs(Blackhole blackhole) {
+        for (Object record : titles) {
+            blackhole.consume(new Song((Map<String, Object>) record));
+        }
+    }
+
+    /** Add the songs of a page of a "titles" response to a list handler. */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<Song> listHandlerAdd() {
+        songHandler.clear();
+        for (Object record : titles) {
+            songHandler.add((Map<String, Object>) record);
+        }
+        return songHandler.getItems();
+    }
+
+    /** Create the items of a page of a browse response. */
+    @Benchmark
+    public void parseBrowseItems(Blackhole blackhole) {
+        for (Map<String, Object> record : browseItems) {
+            blackhole.consume(new JiveItem(record));
+        }
+    }
+
+    /** Combine the window of a browse response with the window of its base record. */
+    @Benchmark
+    public Window extractWindow() {
+        return JiveItem.extractWindow(window, baseWindow);
+    }
+}
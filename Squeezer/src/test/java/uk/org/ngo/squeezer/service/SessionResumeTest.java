@@ -0,0 +1,166 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import org.cometd.bayeux.Channel;
+import org.cometd.bayeux.client.ClientSessionChannel;
+import org.cometd.client.BayeuxClient;
+import org.eclipse.jetty.client.HttpClient;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that {@link SqueezerBayeuxClient} continues its session when the streaming connection to
+ * {@link FakeLmsServer} is lost, and starts a new one if the server no longer knows the session.
+ */
+public class SessionResumeTest extends TestCase {
+    private static final long TIMEOUT = 5_000;
+    private static final String PLAYER_ID = "00:04:20:12:34:56";
+
+    private FakeLmsServer server;
+    private HttpClient httpClient;
+    private SqueezerBayeuxClient client;
+
+    /** Whether to resume at once when the connection is lost */
+    private volatile boolean resumeWhenLost = true;
+    private final CountDownLatch connectionLost = new CountDownLatch(1);
+    private final CountDownLatch resumed = new CountDownLatch(1);
+    private final CountDownLatch rejected = new CountDownLatch(1);
+    private final CountDownLatch handshakes = new CountDownLatch(2);
+    private final AtomicInteger connects = new AtomicInteger();
+    private final AtomicInteger failedConnects = new AtomicInteger();
+    /** Permits for player status messages received */
+    private final Semaphore statusMessages = new Semaphore(0);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = FakeLmsServer.builder()
+                .statusInterval(20)
+                .build();
+        server.start();
+
+        httpClient = new HttpClient();
+        httpClient.start();
+        client = new SqueezerBayeuxClient(server.getUrl(), new HttpStreamingTransport(server.getUrl(), null, httpClient));
+        client.setSessionListener(new SqueezerBayeuxClient.SessionListener() {
+            @Override
+            public void onConnectionLost(Throwable failure) {
+                connectionLost.countDown();
+                if (resumeWhenLost) {
+                    client.resume();
+                }
+            }
+
+            @Override
+            public void onResumed() {
+                resumed.countDown();
+            }
+
+            @Override
+            public void onResumeFailed(boolean wasRejected) {
+                if (wasRejected) {
+                    rejected.countDown();
+                }
+                client.rehandshake();
+            }
+        });
+        client.getChannel(Channel.META_HANDSHAKE).addListener((ClientSessionChannel.MessageListener) (channel, message) -> {
+            if (message.isSuccessful()) {
+                handshakes.countDown();
+            }
+        });
+        client.getChannel(Channel.META_CONNECT).addListener((ClientSessionChannel.MessageListener) (channel, message) -> {
+            if (message.isSuccessful()) {
+                connects.incrementAndGet();
+            } else {
+                failedConnects.incrementAndGet();
+            }
+        });
+        client.handshake();
+        assertTrue(client.waitFor(TIMEOUT, BayeuxClient.State.CONNECTED));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        client.disconnect(1000);
+        httpClient.stop();
+        server.stop();
+        super.tearDown();
+    }
+
+    public void testSessionIsResumed() throws Exception {
+        String clientId = client.getId();
+        subscribePlayerStatus();
+        assertTrue("Status before the connection is lost", statusMessages.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+        int connectsBefore = connects.get();
+
+        server.dropConnections();
+
+        assertTrue("Resumed", resumed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(client.waitFor(TIMEOUT, BayeuxClient.State.CONNECTED));
+        assertEquals(clientId, client.getId());
+        assertEquals("No new handshake", 1, server.getHandshakes());
+        assertTrue("Connect listeners see the resumed connect", connects.get() > connectsBefore);
+
+        statusMessages.drainPermits();
+        assertTrue("Subscription is kept", statusMessages.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    public void testClientLeavesReconnectToResume() throws Exception {
+        resumeWhenLost = false;
+        int serverConnects = server.getConnects();
+
+        server.dropConnections();
+
+        assertTrue("Connection lost", connectionLost.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        // Longer than the client waits before it retries a failed connect of its own
+        Thread.sleep(3_000);
+        assertEquals("No connect of the client's own", serverConnects, server.getConnects());
+        assertEquals("Failed connect not passed on", 0, failedConnects.get());
+
+        client.resume();
+
+        assertTrue("Resumed", resumed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(serverConnects + 1, server.getConnects());
+        assertEquals(1, server.getHandshakes());
+    }
+
+    public void testRejectedSessionMakesNewHandshake() throws Exception {
+        String clientId = client.getId();
+
+        server.forgetSessions();
+        server.dropConnections();
+
+        assertTrue("Rejected", rejected.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue("New handshake", handshakes.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(2, server.getHandshakes());
+        assertTrue(client.waitFor(TIMEOUT, BayeuxClient.State.CONNECTED));
+        assertFalse("New session", clientId.equals(client.getId()));
+        assertEquals(1, resumed.getCount());
+    }
+
+    private void subscribePlayerStatus() throws InterruptedException {
+        String responseChannel = "/" + client.getId() + "/slim/playerstatus/" + PLAYER_ID;
+        // A subscribe which is not answered before the connection is lost fails, so wait for it
+        CountDownLatch subscribed = new CountDownLatch(1);
+        client.getChannel(responseChannel).subscribe((ClientSessionChannel.MessageListener) (channel, message) -> statusMessages.release(),
+                (channel, message) -> {
+                    if (message.isSuccessful()) {
+                        subscribed.countDown();
+                    }
+                });
+        assertTrue("Subscribed", subscribed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("request", Arrays.asList(PLAYER_ID, Arrays.asList("status", "-", "1", "subscribe:1")));
+        data.put("response", responseChannel);
+        client.getChannel("/slim/subscribe").publish(data);
+    }
+}
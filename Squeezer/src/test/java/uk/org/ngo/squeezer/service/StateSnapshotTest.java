@@ -0,0 +1,96 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StateSnapshotTest extends TestCase {
+
+    public void testRoundTrip() throws IOException {
+        Map<String, Object> player = new HashMap<>();
+        player.put("playerid", "00:04:20:12:34:56");
+        player.put("name", "Kitchen");
+        player.put("connected", 1L);
+        player.put("canpoweroff", null);
+
+        Map<String, Object> song = new HashMap<>();
+        song.put("title", "Bl\u00e5b\u00e6rsyltet\u00f8y");
+        song.put("duration", 213.5);
+        Map<String, Object> status = new HashMap<>();
+        status.put("mode", "play");
+        status.put("mixer volume", 40);
+        status.put("item_loop", new Object[]{song});
+
+        Map<String, Object> menuItem = new HashMap<>();
+        menuItem.put("id", "myMusic");
+        menuItem.put("weight", 11L);
+        menuItem.put("isANode", Boolean.TRUE);
+        menuItem.put("params", Arrays.asList("a", "b"));
+
+        StateSnapshot snapshot = new StateSnapshot("192.168.1.2:9000", "00:04:20:12:34:56",
+                Collections.singletonList(player), Collections.singletonMap("00:04:20:12:34:56", status),
+                Collections.singletonList(menuItem));
+        StateSnapshot read = roundTrip(snapshot);
+
+        assertEquals("192.168.1.2:9000", read.server);
+        assertEquals("00:04:20:12:34:56", read.activePlayerId);
+        assertEquals(player, read.players.get(0));
+
+        Map<String, Object> readStatus = read.playerStatus.get("00:04:20:12:34:56");
+        assertEquals("play", readStatus.get("mode"));
+        assertEquals("Integral numbers are read back as longs", 40L, readStatus.get("mixer volume"));
+        Object[] items = (Object[]) readStatus.get("item_loop");
+        assertEquals(song, items[0]);
+
+        Map<String, Object> readMenuItem = read.homeMenu.get(0);
+        assertEquals(Boolean.TRUE, readMenuItem.get("isANode"));
+        assertTrue("Lists are read back as arrays", Arrays.equals(new Object[]{"a", "b"}, (Object[]) readMenuItem.get("params")));
+    }
+
+    public void testNoActivePlayer() throws IOException {
+        List<Map<String, Object>> none = Collections.emptyList();
+        StateSnapshot read = roundTrip(new StateSnapshot("server", null, none, Collections.emptyMap(), none));
+
+        assertNull(read.activePlayerId);
+        assertTrue(read.players.isEmpty());
+        assertTrue(read.playerStatus.isEmpty());
+        assertTrue(read.homeMenu.isEmpty());
+    }
+
+    public void testOtherVersionIsIgnored() throws IOException {
+        assertNull(StateSnapshot.readFrom(new ByteArrayInputStream(new byte[]{0, 0, 0, 99})));
+    }
+
+    public void testBadStringLength() {
+        assertCorrupt(new byte[]{0, 0, 0, 1, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        assertCorrupt(new byte[]{0, 0, 0, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+    }
+
+    public void testBadListSize() {
+        // Version, server "a", no active player, and more players than bytes left
+        assertCorrupt(new byte[]{0, 0, 0, 1, 0, 0, 0, 1, 'a', 0, 0x10, 0, 0, 0, 7, 0, 0, 0, 0});
+    }
+
+    private static void assertCorrupt(byte[] bytes) {
+        try {
+            StateSnapshot.readFrom(new ByteArrayInputStream(bytes));
+            fail("Corrupt snapshot was read");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static StateSnapshot roundTrip(StateSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.writeTo(out);
+        StateSnapshot read = StateSnapshot.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertNotNull(read);
+        return read;
+    }
+}
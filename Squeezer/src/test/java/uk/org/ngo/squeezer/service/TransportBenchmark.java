@@ -0,0 +1,88 @@
+package uk.org.ngo.squeezer.service;
+
+import org.cometd.bayeux.Message;
+import org.eclipse.jetty.client.HttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of messages received from the server, as done by {@link HttpStreamingTransport} for
+ * every message: splitting the stream into JSON values, and parsing them into Bayeux messages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransportBenchmark {
+    /** Size of the chunks the streamed text is split in, as it might arrive from the network */
+    private static final int CHUNK_SIZE = 1400;
+
+    private ParsingTransport transport;
+    private String playerStatus;
+    private String browseAlbums;
+    private char[] stream;
+
+    /** Exposes the message parsing of the transport. */
+    private static class ParsingTransport extends HttpStreamingTransport {
+        ParsingTransport() {
+            super("http://127.0.0.1:9000/cometd", null, new HttpClient());
+        }
+
+        List<Message.Mutable> parse(String content) throws ParseException {
+            return parseMessages(content);
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        transport = new ParsingTransport();
+        transport.init();
+        playerStatus = Fixtures.read(Fixtures.PLAYER_STATUS);
+        browseAlbums = Fixtures.read(Fixtures.BROWSE_ALBUMS);
+        stream = (playerStatus + browseAlbums + playerStatus).toCharArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        transport.terminate();
+    }
+
+    @Benchmark
+    public List<Message.Mutable> parsePlayerStatus() throws ParseException {
+        return transport.parse(playerStatus);
+    }
+
+    @Benchmark
+    public List<Message.Mutable> parseBrowseResponse() throws ParseException {
+        return transport.parse(browseAlbums);
+    }
+
+    /** Split a stream with a browse response between two status messages, and parse the values. */
+    @Benchmark
+    public void splitAndParseStream(Blackhole blackhole) throws ParseException {
+        JsonStreamSplitter splitter = new JsonStreamSplitter();
+        for (int offset = 0; offset < stream.length; offset += CHUNK_SIZE) {
+            splitter.append(stream, offset, Math.min(CHUNK_SIZE, stream.length - offset));
+            String json;
+            while ((json = splitter.next()) != null) {
+                blackhole.consume(transport.parse(json));
+            }
+        }
+    }
+}
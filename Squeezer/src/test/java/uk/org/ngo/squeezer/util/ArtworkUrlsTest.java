@@ -0,0 +1,53 @@
+package uk.org.ngo.squeezer.util;
+
+import junit.framework.TestCase;
+
+public class ArtworkUrlsTest extends TestCase {
+    private static final String SERVER = "http://192.168.1.2:9000";
+
+    public void testCoverIsResizedToStandardSize() {
+        assertEquals(SERVER + "/music/1a2b3c/cover_256x256",
+                ArtworkUrls.resize(SERVER + "/music/1a2b3c/cover", 144, 144));
+        assertEquals(SERVER + "/music/-123/cover_64x64.jpg",
+                ArtworkUrls.resize(SERVER + "/music/-123/cover.jpg", 48, 64));
+    }
+
+    public void testExistingSizeIsReplacedAndModeKept() {
+        assertEquals(SERVER + "/music/1a2b3c/cover_512x512_o",
+                ArtworkUrls.resize(SERVER + "/music/1a2b3c/cover_50x50_o", 300, 400));
+        assertEquals(SERVER + "/music/1a2b3c/thumb_128x128_p.png",
+                ArtworkUrls.resize(SERVER + "/music/1a2b3c/thumb_x300_p.png", 100, 100));
+    }
+
+    public void testImageProxyIsResized() {
+        assertEquals(SERVER + "/imageproxy/https%3A%2F%2Fexample.com%2Fa.jpg/image_128x128.png",
+                ArtworkUrls.resize(SERVER + "/imageproxy/https%3A%2F%2Fexample.com%2Fa.jpg/image.png", 96, 96));
+    }
+
+    public void testOtherUrlsAreUnchanged() {
+        String[] urls = {
+                "https://example.com/cover.jpg",
+                SERVER + "/html/images/radio.png",
+                SERVER + "/music/1a2b3c/download",
+                SERVER + "/music/1a2b3c/cover?size=100",
+        };
+        for (String url : urls) {
+            assertEquals(url, ArtworkUrls.resize(url, 100, 100));
+        }
+    }
+
+    public void testUnknownOrLargeSizesAreUnchanged() {
+        String url = SERVER + "/music/1a2b3c/cover";
+        assertEquals(url, ArtworkUrls.resize(url, 0, 0));
+        assertEquals(url, ArtworkUrls.resize(url, 2000, 1500));
+    }
+
+    public void testGetSize() {
+        assertEquals(0, ArtworkUrls.getSize(0));
+        assertEquals(64, ArtworkUrls.getSize(1));
+        assertEquals(64, ArtworkUrls.getSize(64));
+        assertEquals(128, ArtworkUrls.getSize(65));
+        assertEquals(1024, ArtworkUrls.getSize(1024));
+        assertEquals(0, ArtworkUrls.getSize(1025));
+    }
+}
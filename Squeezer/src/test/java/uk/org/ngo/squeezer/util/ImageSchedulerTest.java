@@ -0,0 +1,114 @@
+package uk.org.ngo.squeezer.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+public class ImageSchedulerTest extends TestCase {
+    private final List<String> mOrder = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch mStarted = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    private ImageScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws InterruptedException {
+        mScheduler = new ImageScheduler(1);
+
+        // Occupy the only thread, so the following tasks are queued
+        mScheduler.executor(ImageScheduler.PRIORITY_VISIBLE).execute(() -> {
+            mStarted.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(mStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testOrder() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(5);
+        submit(ImageScheduler.PRIORITY_PREFETCH, "prefetch 1", done);
+        submit(ImageScheduler.PRIORITY_VISIBLE, "row 1", done);
+        submit(ImageScheduler.PRIORITY_PREFETCH, "prefetch 2", done);
+        submit(ImageScheduler.PRIORITY_VISIBLE, "row 2", done);
+        submit(ImageScheduler.PRIORITY_NOW_PLAYING, "now playing", done);
+
+        assertEquals(2, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_VISIBLE));
+        assertEquals(2, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_PREFETCH));
+        assertEquals(1, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_NOW_PLAYING));
+
+        mRelease.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // Visible rows newest first, prefetches oldest first
+        assertEquals(Arrays.asList("now playing", "row 2", "row 1", "prefetch 1", "prefetch 2"), mOrder);
+        assertEquals(0, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_VISIBLE));
+    }
+
+    public void testPurgeRemovesCancelledTasks() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        FutureTask<Void> cancelled = new FutureTask<>(() -> mOrder.add("cancelled"), null);
+        mScheduler.executor(ImageScheduler.PRIORITY_VISIBLE).execute(cancelled);
+        submit(ImageScheduler.PRIORITY_VISIBLE, "row", done);
+        assertEquals(2, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_VISIBLE));
+
+        cancelled.cancel(true);
+        mScheduler.purge();
+        assertEquals(1, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_VISIBLE));
+
+        mRelease.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("row"), mOrder);
+    }
+
+    public void testCancelledTasksArePurgedByTheScheduler() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < ImageScheduler.PURGE_THRESHOLD; i++) {
+            FutureTask<Void> cancelled = new FutureTask<>(() -> mOrder.add("cancelled"), null);
+            mScheduler.executor(ImageScheduler.PRIORITY_VISIBLE).execute(cancelled);
+            cancelled.cancel(true);
+            mScheduler.onCancelled();
+        }
+        submit(ImageScheduler.PRIORITY_VISIBLE, "row", done);
+
+        // The purge waits for a thread like any other task
+        assertEquals(ImageScheduler.PURGE_THRESHOLD + 1, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_VISIBLE));
+        assertEquals(1, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_NOW_PLAYING));
+
+        mRelease.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("row"), mOrder);
+        assertTrue(mScheduler.toString(), mScheduler.toString().contains(
+                "purged=" + ImageScheduler.PURGE_THRESHOLD + ", skipped=0"));
+    }
+
+    public void testCancelledTaskReachedByThread() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        FutureTask<Void> cancelled = new FutureTask<>(() -> mOrder.add("cancelled"), null);
+        mScheduler.executor(ImageScheduler.PRIORITY_VISIBLE).execute(cancelled);
+        submit(ImageScheduler.PRIORITY_PREFETCH, "prefetch", done);
+        cancelled.cancel(true);
+        mScheduler.onCancelled();
+
+        mRelease.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("prefetch"), mOrder);
+        assertEquals(0, mScheduler.getQueueDepth(ImageScheduler.PRIORITY_VISIBLE));
+        assertTrue(mScheduler.toString(), mScheduler.toString().contains("purged=0, skipped=1"));
+    }
+
+    private void submit(int priority, String name, CountDownLatch done) {
+        mScheduler.executor(priority).execute(new FutureTask<Void>(() -> {
+            mOrder.add(name);
+            done.countDown();
+        }, null));
+    }
+}
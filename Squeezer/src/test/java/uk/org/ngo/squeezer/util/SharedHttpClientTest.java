@@ -0,0 +1,130 @@
+package uk.org.ngo.squeezer.util;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Checks that the client fetches artwork from https URLs, directly and after a redirect from
+ * http, and checks the certificate when it does. The https server uses the self-signed
+ * certificate for localhost and 127.0.0.1 in <code>src/test/resources/tls</code>.
+ */
+public class SharedHttpClientTest extends TestCase {
+    private static final String HOST = "127.0.0.1";
+    private static final char[] PASSWORD = "squeezer".toCharArray();
+    private static final byte[] COVER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private KeyStore keyStore;
+    private HttpsServer httpsServer;
+    private HttpServer httpServer;
+    private HttpClient httpClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("tls/localhost.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        InetAddress loopback = InetAddress.getByName(HOST);
+        httpsServer = HttpsServer.create(new InetSocketAddress(loopback, 0), 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        httpsServer.createContext("/cover.png", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(HttpStatus.OK_200, COVER.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(COVER);
+            }
+        });
+        httpsServer.start();
+
+        httpServer = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        httpServer.createContext("/cover.png", exchange -> {
+            exchange.getResponseHeaders().set("Location", httpsUrl());
+            exchange.sendResponseHeaders(HttpStatus.MOVED_PERMANENTLY_301, -1);
+            exchange.close();
+        });
+        httpServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (httpClient != null) {
+            httpClient.stop();
+        }
+        httpServer.stop(0);
+        httpsServer.stop(0);
+        super.tearDown();
+    }
+
+    public void testHttpsUrl() throws Exception {
+        startClient(keyStore);
+
+        ContentResponse response = httpClient.GET(httpsUrl());
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertTrue(Arrays.equals(COVER, response.getContent()));
+    }
+
+    public void testRedirectToHttps() throws Exception {
+        startClient(keyStore);
+
+        ContentResponse response = httpClient.GET("http://" + HOST + ":" + httpServer.getAddress().getPort() + "/cover.png");
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertTrue(Arrays.equals(COVER, response.getContent()));
+    }
+
+    public void testUntrustedCertificateIsRefused() throws Exception {
+        startClient(null);
+
+        try {
+            httpClient.GET(httpsUrl());
+            fail("Self-signed certificate was accepted");
+        } catch (Exception expected) {
+        }
+    }
+
+    private void startClient(KeyStore trustStore) throws Exception {
+        SslContextFactory sslContextFactory = new SslContextFactory(false);
+        sslContextFactory.setEndpointIdentificationAlgorithm("HTTPS");
+        if (trustStore != null) {
+            // A trust store without a key store is refused by the factory, so trust it through a
+            // context of its own
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(trustStore);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+            sslContextFactory.setSslContext(sslContext);
+        }
+        httpClient = SharedHttpClient.newHttpClient(sslContextFactory);
+        httpClient.start();
+    }
+
+    private String httpsUrl() {
+        return "https://" + HOST + ":" + httpsServer.getAddress().getPort() + "/cover.png";
+    }
+}
@@ -0,0 +1,113 @@
+package uk.org.ngo.squeezer.util;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest extends TestCase {
+
+    public void testConcurrentLoadsShareOneLoad() throws InterruptedException {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] results = new String[2];
+
+        Thread first = new Thread(() -> results[0] = singleFlight.get("url", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "image";
+        }));
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse("Waiter returns at once", singleFlight.load("url", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }, result -> results[1] = result));
+        release.countDown();
+        first.join();
+
+        assertEquals(1, loads.get());
+        assertEquals("image", results[0]);
+        assertEquals("image", results[1]);
+        assertEquals(0, singleFlight.size());
+    }
+
+    public void testLoadsAreNotCached() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        singleFlight.get("url", () -> "a" + loads.incrementAndGet());
+        assertEquals("a2", singleFlight.get("url", () -> "a" + loads.incrementAndGet()));
+    }
+
+    public void testCancelledLoadIsHandedToWaiter() throws InterruptedException {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] results = new String[3];
+
+        Thread first = new Thread(() -> singleFlight.load("url", new SingleFlight.Loader<String>() {
+            @Override
+            public String load() {
+                started.countDown();
+                await(release);
+                return null;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        }, result -> results[0] = result));
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse(singleFlight.load("url", () -> "image" + loads.incrementAndGet(), result -> results[1] = result));
+        assertFalse(singleFlight.load("url", () -> "image" + loads.incrementAndGet(), result -> results[2] = result));
+        release.countDown();
+        first.join();
+
+        assertNull(results[0]);
+        assertEquals("Only one waiter loads", 1, loads.get());
+        assertEquals("image1", results[1]);
+        assertEquals("image1", results[2]);
+        assertEquals(0, singleFlight.size());
+    }
+
+    public void testFailedLoadIsNotRepeatedByWaiters() throws InterruptedException {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] results = {"", ""};
+
+        Thread first = new Thread(() -> results[0] = singleFlight.get("url", () -> {
+            started.countDown();
+            await(release);
+            return null;
+        }));
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse(singleFlight.load("url", () -> "image" + loads.incrementAndGet(), result -> results[1] = result));
+        release.countDown();
+        first.join();
+
+        assertNull(results[0]);
+        assertNull(results[1]);
+        assertEquals(0, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}